@@ -0,0 +1,82 @@
+package socs.network.message;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding an LSAUPDATE with both codecs. Besides ops/s, encode reports the bytes it produced per
+ * second as the secondary "bytes" result, so bytes / ops gives the frame size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"serialization", "binary"})
+    String codec;
+
+    //LSAs in the packet, each with 4 links
+    @Param({"1", "100"})
+    int lsas;
+
+    private PacketCodec packetCodec;
+    private SOSPFPacket packet;
+    private byte[] frame;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Size {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        packetCodec = codec.equals("binary") ? new BinaryCodec() : new SerializationCodec();
+
+        packet = new SOSPFPacket();
+        packet.srcProcessIP = "127.0.0.1";
+        packet.srcProcessPort = 1;
+        packet.srcIP = "10.0.0.1";
+        packet.dstIP = "10.0.0.2";
+        packet.sospfType = 1;
+        packet.lsaArray = new Vector<LSA>();
+        for (int i = 0; i < lsas; i++) {
+            LSA lsa = new LSA();
+            lsa.linkStateID = "10.0." + (i / 250) + "." + (i % 250 + 1);
+            lsa.lsaSeqNumber = i;
+            for (int j = 0; j < 4; j++) {
+                LinkDescription ld = new LinkDescription();
+                ld.linkID = "10.1." + j + "." + (i % 250 + 1);
+                ld.portNum = j;
+                ld.tosMetrics = j + 1;
+                lsa.links.add(ld);
+            }
+            packet.lsaArray.add(lsa);
+        }
+
+        frame = packetCodec.encode(packet);
+    }
+
+    @Benchmark
+    public byte[] encode(Size size) throws IOException {
+        byte[] encoded = packetCodec.encode(packet);
+        size.bytes += encoded.length;
+        return encoded;
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        return packetCodec.decode(frame);
+    }
+}
@@ -0,0 +1,71 @@
+package socs.network.node;
+
+import org.openjdk.jmh.annotations.*;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Installing a newer LSA of a known router into the link state database, which swaps it into _store and publishes
+ * the next snapshot, by repairing the shortest path tree or by a full SPF run. Every install changes the weight of
+ * one link of a different router, the way a weight change in the network would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstallBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    int routers;
+
+    @Param({"true", "false"})
+    boolean incremental;
+
+    private LinkStateDatabase lsd;
+    private String[] ids;
+    private int next;
+    private final Random random = new Random(535);
+
+    @Setup
+    public void setUp() {
+        Map<String, LSA> store = Networks.lsas(Networks.topology("random", routers, 535));
+        LinkStateDatabase full = Networks.database(store, Networks.ipOf(0));
+
+        //same contents, with the configured SPF mode
+        lsd = new LinkStateDatabase(new RouterDescription("127.0.0.1", (short) 1, Networks.ipOf(0)), incremental);
+        lsd._store.putAll(full._store);
+        lsd.install(replacement(lsd.get(Networks.ipOf(1))));
+
+        ids = store.keySet().toArray(new String[0]);
+    }
+
+    @Benchmark
+    public boolean install() {
+        String id = ids[next++ % ids.length];
+        return lsd.install(replacement(lsd.get(id)));
+    }
+
+    //the next LSA of the same router, with the weight of one of its links changed
+    private LSA replacement(LSA current) {
+        LSA lsa = new LSA();
+        lsa.linkStateID = current.linkStateID;
+        lsa.lsaSeqNumber = current.lsaSeqNumber + 1;
+
+        int changed = random.nextInt(current.links.size());
+        int i = 0;
+        for (LinkDescription ld : current.links) {
+            LinkDescription copy = new LinkDescription();
+            copy.linkID = ld.linkID;
+            copy.portNum = ld.portNum;
+            copy.tosMetrics = i++ == changed ? 1 + random.nextInt(10) : ld.tosMetrics;
+            lsa.links.add(copy);
+        }
+        return lsa;
+    }
+}
@@ -0,0 +1,83 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+import socs.network.sim.Topology;
+import socs.network.util.IPv4;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic link state databases for the benchmarks, built from the simulator's topologies.
+ */
+class Networks {
+
+    static Topology topology(String kind, int routers, long seed) {
+        Random random = new Random(seed);
+        if (kind.equals("ring")) {
+            return Topology.ring(routers, random);
+        } else if (kind.equals("grid")) {
+            int width = (int) Math.ceil(Math.sqrt(routers));
+            return Topology.grid(width, (routers + width - 1) / width, random);
+        } else if (kind.equals("random")) {
+            return Topology.random(routers, 4, random);
+        } else if (kind.equals("scalefree")) {
+            return Topology.scaleFree(routers, 2, random);
+        }
+        throw new IllegalArgumentException("Unknown topology " + kind);
+    }
+
+    //simulated IPs are 10.x.y.z, counting up from 10.0.0.1 like the simulator's
+    static String ipOf(int router) {
+        return IPv4.format((10 << 24) + router + 1);
+    }
+
+    /**
+     * returns the LSA every router of the topology would originate, by simulated IP, each link advertised both ways
+     */
+    static Map<String, LSA> lsas(Topology topology) {
+        Map<String, LSA> store = new HashMap<String, LSA>();
+        for (int i = 0; i < topology.getSize(); i++) {
+            LSA lsa = new LSA();
+            lsa.linkStateID = ipOf(i);
+            lsa.lsaSeqNumber = 0;
+            store.put(lsa.linkStateID, lsa);
+        }
+
+        for (int[] link : topology.getLinks()) {
+            store.get(ipOf(link[0])).links.add(describe(link[1], link[2]));
+            store.get(ipOf(link[1])).links.add(describe(link[0], link[2]));
+        }
+        return store;
+    }
+
+    /**
+     * returns the database of the given router holding every LSA, with its snapshot built by a single full SPF run
+     */
+    static LinkStateDatabase database(Map<String, LSA> lsas, String root) {
+        LinkStateDatabase lsd = new LinkStateDatabase(new RouterDescription("127.0.0.1", (short) 1, root));
+
+        //installing one at a time would run the SPF once per router, so all but one go straight into the store
+        //and the install of the last, unknown to the current snapshot, rebuilds it from the whole store
+        String last = null;
+        for (LSA lsa : lsas.values()) {
+            if (last == null && !lsa.linkStateID.equals(root)) {
+                last = lsa.linkStateID;
+                continue;
+            }
+            lsd._store.put(lsa.linkStateID, lsa);
+        }
+        if (last != null) lsd.install(lsas.get(last));
+        return lsd;
+    }
+
+    private static LinkDescription describe(int router, int weight) {
+        LinkDescription ld = new LinkDescription();
+        ld.linkID = ipOf(router);
+        ld.portNum = router + 1;
+        ld.tosMetrics = weight;
+        return ld;
+    }
+}
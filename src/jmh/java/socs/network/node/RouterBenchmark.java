@@ -0,0 +1,52 @@
+package socs.network.node;
+
+import org.openjdk.jmh.annotations.*;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+import socs.network.util.Configuration;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building our own LSA from the neighbor table, which every origination does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+    @Param({"4", "16", "64"})
+    int neighbors;
+
+    private Router router;
+
+    @Setup
+    public void setUp() {
+        Configuration config = new Configuration();
+        config.addEntry("socs.network.router.ip", Networks.ipOf(0));
+        config.addEntry("socs.network.router.port", "1");
+        config.addEntry("socs.network.router.ports", String.valueOf(neighbors));
+        config.addEntry("socs.network.router.executor", "shared");
+        router = new Router(config, new LoopbackTransport());
+
+        for (int i = 1; i <= neighbors; i++) {
+            RouterDescription neighbor = new RouterDescription("127.0.0.1", (short) (i + 1), Networks.ipOf(i));
+            neighbor.status = RouterStatus.TWO_WAY;
+            router.ports.add(new Link(router.rd, neighbor, i % 10 + 1));
+        }
+    }
+
+    @Benchmark
+    public LinkedList<LinkDescription> extractLinks() {
+        return router.extractLinks();
+    }
+
+    @Benchmark
+    public LSA constructLSA() {
+        return router.constructLSA();
+    }
+}
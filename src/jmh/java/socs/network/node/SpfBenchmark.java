@@ -0,0 +1,65 @@
+package socs.network.node;
+
+import org.openjdk.jmh.annotations.*;
+import socs.network.message.LSA;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shortest path computation over synthetic networks of 10 to 100k routers. fullSpf is what every LSA install used
+ * to cost, indexing the store and running Dijkstra; dijkstra is the SPF alone over a built index; getShortestPath
+ * is what detect costs now that routing tables are precomputed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpfBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    int routers;
+
+    @Param({"grid", "random", "scalefree"})
+    String topology;
+
+    private Map<String, LSA> store;
+    private AdjacencyIndex index;
+    private int root;
+    private LinkStateDatabase lsd;
+    //the router furthest from the root, so the path walk is as long as it gets
+    private String farthest;
+
+    @Setup
+    public void setUp() {
+        store = Networks.lsas(Networks.topology(topology, routers, 535));
+        index = new AdjacencyIndex(store, 1);
+        root = index.indexOf(Networks.ipOf(0));
+
+        lsd = Networks.database(store, Networks.ipOf(0));
+        ShortestPathTree tree = lsd.snapshot().routingTable.tree;
+        int far = tree.root;
+        for (int v = 0; v < tree.distance.length; v++) {
+            if (tree.isReachable(v) && tree.distance[v] > tree.distance[far]) far = v;
+        }
+        farthest = tree.index.nodes[far].linkStateID;
+    }
+
+    @Benchmark
+    public ShortestPathTree fullSpf() {
+        AdjacencyIndex full = new AdjacencyIndex(store, 1);
+        return new ShortestPathTree(full, full.indexOf(Networks.ipOf(0)));
+    }
+
+    @Benchmark
+    public ShortestPathTree dijkstra() {
+        return new ShortestPathTree(index, root);
+    }
+
+    @Benchmark
+    public String getShortestPath() {
+        return lsd.getShortestPath(farthest);
+    }
+}
@@ -0,0 +1,59 @@
+package socs.network.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running a burst of tasks that block for a millisecond, as a send to a slow neighbor does, on each executor mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    @Param({TaskExecutors.PLATFORM, TaskExecutors.SHARED})
+    String mode;
+
+    @Param({"100", "1000"})
+    int tasks;
+
+    private Executor executor;
+
+    @Setup
+    public void setUp() {
+        executor = TaskExecutors.create(mode);
+    }
+
+    @TearDown
+    public void tearDown() {
+        //the shared pool lives as long as the JVM
+        if (executor instanceof ExecutorService && !TaskExecutors.SHARED.equals(mode)) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
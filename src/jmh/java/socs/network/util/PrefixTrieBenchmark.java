@@ -0,0 +1,79 @@
+package socs.network.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Longest-prefix-match lookup rate of the forwarding table's trie with a thousand to a million routes, most of
+ * them /24s as in real tables. Every lookup goes to a random address near a route, so it mostly misses the cache
+ * once the table grows. stringMap is the exact-match String lookup the forwarding table did before, over as many
+ * addresses, as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixTrieBenchmark {
+
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"1000", "100000", "1000000"})
+    int routes;
+
+    private PrefixTrie trie;
+    private int[] addresses;
+
+    private HashMap<String, Integer> map;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(535);
+
+        trie = new PrefixTrie(routes);
+        map = new HashMap<String, Integer>(routes * 2);
+        int[] prefixes = new int[routes];
+        for (int i = 0; i < routes; i++) {
+            int length = random.nextInt(10) < 6 ? 24 : 16 + random.nextInt(17);
+            prefixes[i] = random.nextInt();
+            trie.put(prefixes[i], length, i % 1024);
+            map.put(IPv4.format(prefixes[i]), i % 1024);
+        }
+
+        addresses = new int[LOOKUPS];
+        names = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            int prefix = prefixes[random.nextInt(routes)];
+            addresses[i] = prefix ^ random.nextInt(256);
+            names[i] = IPv4.format(prefix);
+        }
+
+        //lays the trie out and builds the index over its top, as the forwarding table does
+        trie.freeze();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int lookup() {
+        int sum = 0;
+        for (int address : addresses) {
+            sum += trie.lookup(address);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int stringMap() {
+        int sum = 0;
+        for (String name : names) {
+            sum += map.get(name);
+        }
+        return sum;
+    }
+}
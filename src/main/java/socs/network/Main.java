@@ -1,5 +1,6 @@
 package socs.network;
 
+import socs.network.node.NioServer;
 import socs.network.node.Router;
 import socs.network.node.Server;
 import socs.network.util.Configuration;
@@ -11,13 +12,25 @@ public class Main {
       System.out.println("usage: program conf_path");
       System.exit(1);
     }
+    Configuration config = new Configuration(args[0]);
+
+    //either a thread per connection or a few event loops multiplexing all of them, for the connections the router
+    //accepts and the ones it opens alike
+    NioServer nio = config.getString("socs.network.router.io", "blocking").equals("nio")
+            ? new NioServer(config.getInt("socs.network.router.ioThreads", 2))
+            : null;
+
     //creates router that will perform all the actions
-    Router r = new Router(new Configuration(args[0]));
+    Router r = nio != null ? new Router(config, nio) : new Router(config);
 
     //have a separate entity accepting and handling incoming client requests
-    Thread server = new Thread(new Server(r));
+    Runnable handler = nio != null ? nio.acceptor(r) : new Server(r);
+    Thread server = new Thread(handler);
     server.start();
 
+    //once the router is reachable, make its metrics visible to JMX tools too
+    r.exportMetrics();
+
     System.out.println("starting terminal");
 
     r.terminal();
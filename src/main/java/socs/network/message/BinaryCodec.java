@@ -0,0 +1,244 @@
+package socs.network.message;
+
+import socs.network.util.IPv4;
+
+import java.io.*;
+import java.util.Vector;
+
+/**
+ * Compact, versioned alternative to {@link SerializationCodec}. Every frame starts with a magic byte and the format
+ * version, followed by either a String reply or an SOSPFPacket:
+ * <pre>
+ * packet:  type(1) flags(1) [srcProcessIP(utf)] srcProcessPort(2) [srcIP(4)] [dstIP(4)] [routerID(utf)]
+ *          [neighborID(4)] HelloWeight(4) [lsaCount(4) lsa*] [headerCount(4) header*]
+ *          [payload(utf) ttl(1) sentAt(8)]
+ * lsa:     linkStateID(4) lsaSeqNumber(4) originatedAt(8) hopCount(2) linkCount(2) link* prefixCount(2) prefix*
+ * header:  linkStateID(4) lsaSeqNumber(4)
+ * link:    linkID(4) portNum(4) tosMetrics(4)
+ * prefix:  address(4) length(1)
+ * </pre>
+ * Simulated IPs are written as 4 bytes, so this codec only works for routers whose simulated IPs are IPv4
+ * addresses. Fields in brackets are only present when the matching flag bit is set.
+ */
+public class BinaryCodec implements PacketCodec {
+
+  static final byte MAGIC = 0x53;
+  static final byte VERSION = 5;
+
+  private static final byte KIND_PACKET = 0;
+  private static final byte KIND_STRING = 1;
+
+  private static final int HAS_SRC_PROCESS_IP = 1;
+  private static final int HAS_SRC_IP = 1 << 1;
+  private static final int HAS_DST_IP = 1 << 2;
+  private static final int HAS_ROUTER_ID = 1 << 3;
+  private static final int HAS_NEIGHBOR_ID = 1 << 4;
+  private static final int HAS_LSA_ARRAY = 1 << 5;
+  private static final int HAS_LSA_HEADERS = 1 << 6;
+  private static final int HAS_PAYLOAD = 1 << 7;
+
+  public byte[] encode(Object message) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    DataOutputStream output = new DataOutputStream(bytes);
+
+    output.writeByte(MAGIC);
+    output.writeByte(VERSION);
+
+    try {
+      if (message instanceof String) {
+        output.writeByte(KIND_STRING);
+        output.writeUTF((String) message);
+      } else if (message instanceof SOSPFPacket) {
+        output.writeByte(KIND_PACKET);
+        writePacket(output, (SOSPFPacket) message);
+      } else {
+        throw new EncodingException("Cannot encode " + message);
+      }
+    } catch (UTFDataFormatException e) {
+      throw new EncodingException("A string of the message is longer than the binary codec allows", e);
+    }
+
+    output.flush();
+    return bytes.toByteArray();
+  }
+
+  public Object decode(byte[] frame) throws IOException {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(frame));
+
+    if (input.readByte() != MAGIC) {
+      throw new IOException("Corrupted packet: not a binary codec frame");
+    }
+    byte version = input.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported binary codec version " + version);
+    }
+
+    byte kind = input.readByte();
+    if (kind == KIND_STRING) {
+      return input.readUTF();
+    } else if (kind == KIND_PACKET) {
+      return readPacket(input);
+    }
+    throw new IOException("Corrupted packet: unknown kind " + kind);
+  }
+
+  private void writePacket(DataOutputStream output, SOSPFPacket packet) throws IOException {
+    int flags = (packet.srcProcessIP != null ? HAS_SRC_PROCESS_IP : 0)
+            | (packet.srcIP != null ? HAS_SRC_IP : 0)
+            | (packet.dstIP != null ? HAS_DST_IP : 0)
+            | (packet.routerID != null ? HAS_ROUTER_ID : 0)
+            | (packet.neighborID != null ? HAS_NEIGHBOR_ID : 0)
+            | (packet.lsaArray != null ? HAS_LSA_ARRAY : 0)
+            | (packet.lsaHeaders != null ? HAS_LSA_HEADERS : 0)
+            | (packet.payload != null ? HAS_PAYLOAD : 0);
+
+    output.writeByte(packet.sospfType);
+    output.writeByte(flags);
+
+    if (packet.srcProcessIP != null) output.writeUTF(packet.srcProcessIP);
+    output.writeShort(packet.srcProcessPort);
+    if (packet.srcIP != null) writeAddress(output, packet.srcIP);
+    if (packet.dstIP != null) writeAddress(output, packet.dstIP);
+    if (packet.routerID != null) output.writeUTF(packet.routerID);
+    if (packet.neighborID != null) writeAddress(output, packet.neighborID);
+    output.writeInt(packet.HelloWeight);
+
+    if (packet.lsaArray != null) {
+      output.writeInt(packet.lsaArray.size());
+      for (LSA lsa : packet.lsaArray) {
+        writeLSA(output, lsa);
+      }
+    }
+
+    if (packet.lsaHeaders != null) {
+      output.writeInt(packet.lsaHeaders.size());
+      for (LSAHeader header : packet.lsaHeaders) {
+        writeAddress(output, header.linkStateID);
+        output.writeInt(header.lsaSeqNumber);
+      }
+    }
+
+    if (packet.payload != null) {
+      output.writeUTF(packet.payload);
+      output.writeByte(Math.max(0, Math.min(packet.ttl, 0xff)));
+      output.writeLong(packet.sentAt);
+    }
+  }
+
+  private SOSPFPacket readPacket(DataInputStream input) throws IOException {
+    SOSPFPacket packet = new SOSPFPacket();
+
+    packet.sospfType = input.readByte();
+    int flags = input.readUnsignedByte();
+
+    if ((flags & HAS_SRC_PROCESS_IP) != 0) packet.srcProcessIP = input.readUTF();
+    packet.srcProcessPort = input.readShort();
+    if ((flags & HAS_SRC_IP) != 0) packet.srcIP = readAddress(input);
+    if ((flags & HAS_DST_IP) != 0) packet.dstIP = readAddress(input);
+    if ((flags & HAS_ROUTER_ID) != 0) packet.routerID = input.readUTF();
+    if ((flags & HAS_NEIGHBOR_ID) != 0) packet.neighborID = readAddress(input);
+    packet.HelloWeight = input.readInt();
+
+    if ((flags & HAS_LSA_ARRAY) != 0) {
+      int count = input.readInt();
+      if (count < 0) {
+        throw new IOException("Corrupted packet: negative LSA count");
+      }
+      packet.lsaArray = new Vector<LSA>(count);
+      for (int i = 0; i < count; i++) {
+        packet.lsaArray.add(readLSA(input));
+      }
+    }
+
+    if ((flags & HAS_LSA_HEADERS) != 0) {
+      int count = input.readInt();
+      if (count < 0) {
+        throw new IOException("Corrupted packet: negative LSA header count");
+      }
+      packet.lsaHeaders = new Vector<LSAHeader>(count);
+      for (int i = 0; i < count; i++) {
+        LSAHeader header = new LSAHeader();
+        header.linkStateID = readAddress(input);
+        header.lsaSeqNumber = input.readInt();
+        packet.lsaHeaders.add(header);
+      }
+    }
+
+    if ((flags & HAS_PAYLOAD) != 0) {
+      packet.payload = input.readUTF();
+      packet.ttl = input.readUnsignedByte();
+      packet.sentAt = input.readLong();
+    }
+    return packet;
+  }
+
+  private void writeLSA(DataOutputStream output, LSA lsa) throws IOException {
+    writeAddress(output, lsa.linkStateID);
+    output.writeInt(lsa.lsaSeqNumber);
+    output.writeLong(lsa.originatedAt);
+    output.writeShort(Math.min(lsa.hopCount, 0xffff));
+
+    if (lsa.links.size() > 0xffff) {
+      throw new EncodingException("Too many links in the LSA of " + lsa.linkStateID);
+    }
+    output.writeShort(lsa.links.size());
+    for (LinkDescription ld : lsa.links) {
+      writeAddress(output, ld.linkID);
+      output.writeInt(ld.portNum);
+      output.writeInt(ld.tosMetrics);
+    }
+
+    if (lsa.prefixes.size() > 0xffff) {
+      throw new EncodingException("Too many prefixes in the LSA of " + lsa.linkStateID);
+    }
+    output.writeShort(lsa.prefixes.size());
+    for (String prefix : lsa.prefixes) {
+      try {
+        output.writeInt(IPv4.prefixAddress(prefix));
+        output.writeByte(IPv4.prefixLength(prefix));
+      } catch (IllegalArgumentException e) {
+        throw new EncodingException("The binary codec needs IPv4 prefixes", e);
+      }
+    }
+  }
+
+  private LSA readLSA(DataInputStream input) throws IOException {
+    LSA lsa = new LSA();
+    lsa.linkStateID = readAddress(input);
+    lsa.lsaSeqNumber = input.readInt();
+    lsa.originatedAt = input.readLong();
+    lsa.hopCount = input.readUnsignedShort();
+
+    int links = input.readUnsignedShort();
+    for (int i = 0; i < links; i++) {
+      LinkDescription ld = new LinkDescription();
+      ld.linkID = readAddress(input);
+      ld.portNum = input.readInt();
+      ld.tosMetrics = input.readInt();
+      lsa.links.add(ld);
+    }
+
+    int prefixes = input.readUnsignedShort();
+    for (int i = 0; i < prefixes; i++) {
+      int address = input.readInt();
+      int length = input.readUnsignedByte();
+      if (length > 32) {
+        throw new IOException("Corrupted packet: prefix length " + length);
+      }
+      lsa.prefixes.add(IPv4.formatPrefix(address, length));
+    }
+    return lsa;
+  }
+
+  private static void writeAddress(DataOutputStream output, String address) throws IOException {
+    try {
+      output.writeInt(IPv4.parse(address));
+    } catch (IllegalArgumentException e) {
+      throw new EncodingException("The binary codec needs IPv4 simulated addresses", e);
+    }
+  }
+
+  private static String readAddress(DataInputStream input) throws IOException {
+    return IPv4.format(input.readInt());
+  }
+}
@@ -0,0 +1,18 @@
+package socs.network.message;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a message cannot be put into a frame, such as a string too long for the binary codec. Nothing was
+ * sent, so unlike other IOExceptions of a send it says nothing about the neighbor or the session.
+ */
+public class EncodingException extends IOException {
+
+  public EncodingException(String message) {
+    super(message);
+  }
+
+  public EncodingException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -9,8 +9,16 @@ public class LSA implements Serializable {
   public String linkStateID;
   public int lsaSeqNumber = Integer.MIN_VALUE;
 
+  //wall clock time in ms at which the originating router built this LSA, 0 if unknown
+  public long originatedAt = 0;
+  //routers this copy went through since it was originated, counted up by every receiver
+  public int hopCount = 0;
+
   public LinkedList<LinkDescription> links = new LinkedList<LinkDescription>();
 
+  //address prefixes reachable through the originating router, written address/length, e.g. 192.168.4.0/24
+  public LinkedList<String> prefixes = new LinkedList<String>();
+
   @Override
   public String toString() {
     StringBuffer sb = new StringBuffer();
@@ -18,6 +26,9 @@ public class LSA implements Serializable {
     for (LinkDescription ld : links) {
       sb.append(ld);
     }
+    for (String prefix : prefixes) {
+      sb.append(prefix).append(" ");
+    }
     sb.append("\n");
     return sb.toString();
   }
@@ -0,0 +1,26 @@
+package socs.network.message;
+
+import java.io.Serializable;
+
+/**
+ * Identifies one LSA without its links, used to describe a database to a neighbor and to request LSAs from it
+ */
+public class LSAHeader implements Serializable {
+
+  //IP address of the router that originated the LSA
+  public String linkStateID;
+  public int lsaSeqNumber;
+
+  public LSAHeader() {
+  }
+
+  public LSAHeader(LSA lsa) {
+    linkStateID = lsa.linkStateID;
+    lsaSeqNumber = lsa.lsaSeqNumber;
+  }
+
+  @Override
+  public String toString() {
+    return linkStateID + ":" + lsaSeqNumber;
+  }
+}
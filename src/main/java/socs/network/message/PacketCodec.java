@@ -0,0 +1,14 @@
+package socs.network.message;
+
+import java.io.IOException;
+
+/**
+ * Turns the messages exchanged between routers (SOSPFPackets and the plain String replies used by attach) into
+ * the payload of one frame on a neighbor session, and back.
+ */
+public interface PacketCodec {
+
+  byte[] encode(Object message) throws IOException;
+
+  Object decode(byte[] frame) throws IOException;
+}
@@ -14,17 +14,25 @@ public class SOSPFPacket implements Serializable {
   public String dstIP;
 
   //common header
-  public short sospfType; //0 - HELLO, 1 - LinkState Update, 2 - CONNECT, 3 - DISCONNECT
+  public short sospfType; //0 - HELLO, 1 - LinkState Update, 2 - CONNECT, 3 - DISCONNECT, 4 - Database Description, 5 - LinkState Request, 6 - DATA
   public String routerID;
 
     public int HelloWeight;
 
-  //used by HELLO message to identify the sender of the message
-  //e.g. when router A sends HELLO to its neighbor, it has to fill this field with its own
-  //simulated IP address
+  //used by HELLO and CONNECT: the simulated IP address of the receiving neighbor once the sender holds the link to
+  //it as TWO_WAY, null before that
   public String neighborID; //neighbor's simulated IP address
 
   //used by LSAUPDATE
   public Vector<LSA> lsaArray = null;
 
+  //used by Database Description, to list every LSA the sender has, and by LinkState Request, to list the ones it wants
+  public Vector<LSAHeader> lsaHeaders = null;
+
+  //used by DATA: what the source sent to dstIP, the hops it may still take before it is dropped, and when the
+  //source sent it in ms since the epoch
+  public String payload = null;
+  public int ttl;
+  public long sentAt;
+
 }
@@ -0,0 +1,33 @@
+package socs.network.message;
+
+import java.io.*;
+
+/**
+ * Codec that writes every message with Java serialization
+ */
+public class SerializationCodec implements PacketCodec {
+
+  public byte[] encode(Object message) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      ObjectOutputStream output = new ObjectOutputStream(bytes);
+      output.writeObject(message);
+      output.close();
+    } catch (IOException e) {
+      //nothing but the message can make writing to memory fail
+      throw new EncodingException("Cannot encode " + message, e);
+    }
+    return bytes.toByteArray();
+  }
+
+  public Object decode(byte[] frame) throws IOException {
+    ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(frame));
+    try {
+      return input.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Corrupted packet", e);
+    } finally {
+      input.close();
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Array-based view of the link state database used by the SPF. Every router is known by its interned
+ * {@link RouterIds} id, and the links of each LSA are resolved once into a compressed sparse row layout: the links
+ * of router v are targets[k] and weights[k] for offsets[v] <= k < offsets[v + 1]. The whole graph thus lives in a
+ * handful of int arrays, however many routers there are, so the SPF never hashes, boxes or walks an LSA's link list.
+ * The reverse edges are kept in the same layout so a repair of the shortest path tree can look at a router's in-links.
+ * An index is immutable and only describes the database version it was built from.
+ */
+class AdjacencyIndex {
+
+    //simulated IP <=> dense id
+    final RouterIds ids;
+    //dense id => LSA it was built from
+    final LSA[] nodes;
+    //out-links: targets[k] is a neighbor of v and weights[k] the cost of that link, for offsets[v] <= k < offsets[v + 1]
+    final int[] offsets;
+    final int[] targets;
+    final int[] weights;
+    //in-links in the same layout: sources[k] is a router with a link to v and sourceWeights[k] the cost of that link
+    final int[] sourceOffsets;
+    final int[] sources;
+    final int[] sourceWeights;
+    //database version this index was built from
+    final long version;
+
+    AdjacencyIndex(Map<String, LSA> store, long version) {
+        this(store, RouterIds.EMPTY, version);
+    }
+
+    /**
+     * builds the index of the whole database, keeping the ids of the routers already interned in known
+     */
+    AdjacencyIndex(Map<String, LSA> store, RouterIds known, long version) {
+        this.version = version;
+
+        ids = known.with(store.keySet());
+        int n = ids.size();
+        nodes = new LSA[n];
+        for (LSA lsa : store.values()) {
+            nodes[ids.indexOf(lsa.linkStateID)] = lsa;
+        }
+
+        //count the usable links first so the rows can be laid out back to back
+        offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + usableLinks(v);
+        }
+
+        targets = new int[offsets[n]];
+        weights = new int[offsets[n]];
+        for (int v = 0; v < n; v++) {
+            resolveLinks(v, targets, weights, offsets[v]);
+        }
+
+        //the in-links are the out-links bucketed by target
+        sourceOffsets = new int[n + 1];
+        for (int target : targets) {
+            sourceOffsets[target + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            sourceOffsets[v + 1] += sourceOffsets[v];
+        }
+
+        sources = new int[targets.length];
+        sourceWeights = new int[targets.length];
+        int[] filled = Arrays.copyOf(sourceOffsets, n);
+        for (int v = 0; v < n; v++) {
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                int slot = filled[targets[k]]++;
+                sources[slot] = v;
+                sourceWeights[slot] = weights[k];
+            }
+        }
+    }
+
+    /**
+     * builds the index of the next database version when only the LSA of one already known router was replaced.
+     * Only the row of that router and the in-link rows of the routers it used to link to or links to now change;
+     * every other row is copied over in bulk.
+     */
+    AdjacencyIndex(AdjacencyIndex previous, LSA replaced, long version) {
+        this.version = version;
+
+        ids = previous.ids;
+        nodes = previous.nodes.clone();
+
+        int u = ids.indexOf(replaced.linkStateID);
+        nodes[u] = replaced;
+
+        int[] rowTargets = new int[usableLinks(u)];
+        int[] rowWeights = new int[rowTargets.length];
+        resolveLinks(u, rowTargets, rowWeights, 0);
+
+        int[][] out = replaceRows(previous.offsets, previous.targets, previous.weights,
+                new int[]{u}, new int[][]{rowTargets}, new int[][]{rowWeights});
+        offsets = out[0];
+        targets = out[1];
+        weights = out[2];
+
+        //every router u used to link to or links to now, each one once and in id order
+        int[] touched = new int[previous.offsets[u + 1] - previous.offsets[u] + rowTargets.length];
+        System.arraycopy(previous.targets, previous.offsets[u], touched, 0, previous.offsets[u + 1] - previous.offsets[u]);
+        System.arraycopy(rowTargets, 0, touched, touched.length - rowTargets.length, rowTargets.length);
+        Arrays.sort(touched);
+        int distinct = 0;
+        for (int i = 0; i < touched.length; i++) {
+            if (i == 0 || touched[i] != touched[i - 1]) touched[distinct++] = touched[i];
+        }
+        touched = Arrays.copyOf(touched, distinct);
+
+        //their in-links lose the old links of u and gain the new ones
+        int[][] newSources = new int[distinct][];
+        int[][] newSourceWeights = new int[distinct][];
+        for (int i = 0; i < distinct; i++) {
+            int target = touched[i];
+            int from = previous.sourceOffsets[target];
+            int to = previous.sourceOffsets[target + 1];
+            int[] s = new int[to - from + rowTargets.length];
+            int[] w = new int[s.length];
+            int count = 0;
+
+            for (int k = from; k < to; k++) {
+                if (previous.sources[k] == u) continue;
+                s[count] = previous.sources[k];
+                w[count++] = previous.sourceWeights[k];
+            }
+            for (int k = 0; k < rowTargets.length; k++) {
+                if (rowTargets[k] != target) continue;
+                s[count] = u;
+                w[count++] = rowWeights[k];
+            }
+            newSources[i] = Arrays.copyOf(s, count);
+            newSourceWeights[i] = Arrays.copyOf(w, count);
+        }
+
+        int[][] in = replaceRows(previous.sourceOffsets, previous.sources, previous.sourceWeights,
+                touched, newSources, newSourceWeights);
+        sourceOffsets = in[0];
+        sources = in[1];
+        sourceWeights = in[2];
+    }
+
+    //returns how many links of the LSA at id v can be on a path
+    private int usableLinks(int v) {
+        if (nodes[v] == null) return 0;
+
+        int count = 0;
+        for (LinkDescription ld : nodes[v].links) {
+            if (isUsable(v, ids.indexOf(ld.linkID))) count++;
+        }
+        return count;
+    }
+
+    //writes the usable links of the LSA at id v into t and w, starting at from
+    private void resolveLinks(int v, int[] t, int[] w, int from) {
+        if (nodes[v] == null) return;
+
+        for (LinkDescription ld : nodes[v].links) {
+            int target = ids.indexOf(ld.linkID);
+            if (!isUsable(v, target)) continue;
+
+            t[from] = target;
+            w[from++] = ld.tosMetrics;
+        }
+    }
+
+    //links to routers we have no LSA for yet, and the self entry, can never be on a path
+    private boolean isUsable(int v, int target) {
+        return target >= 0 && target != v && nodes[target] != null;
+    }
+
+    /**
+     * returns the offsets, ids and costs of a copy of the given rows with the listed rows, in ascending order,
+     * replaced by new contents. Runs of untouched rows are moved with single array copies.
+     */
+    private static int[][] replaceRows(int[] offsets, int[] ids, int[] costs, int[] rows, int[][] rowIds, int[][] rowCosts) {
+        int n = offsets.length - 1;
+        int[] newOffsets = new int[n + 1];
+
+        int shift = 0;
+        int next = 0;
+        for (int v = 0; v < n; v++) {
+            newOffsets[v] = offsets[v] + shift;
+            if (next < rows.length && rows[next] == v) {
+                shift += rowIds[next].length - (offsets[v + 1] - offsets[v]);
+                next++;
+            }
+        }
+        newOffsets[n] = offsets[n] + shift;
+
+        int[] newIds = new int[newOffsets[n]];
+        int[] newCosts = new int[newOffsets[n]];
+
+        //copy the run of rows before each replaced row, then the replaced row itself
+        int copied = 0;
+        for (int i = 0; i < rows.length; i++) {
+            int r = rows[i];
+            int run = offsets[r] - offsets[copied];
+            System.arraycopy(ids, offsets[copied], newIds, newOffsets[copied], run);
+            System.arraycopy(costs, offsets[copied], newCosts, newOffsets[copied], run);
+
+            System.arraycopy(rowIds[i], 0, newIds, newOffsets[r], rowIds[i].length);
+            System.arraycopy(rowCosts[i], 0, newCosts, newOffsets[r], rowCosts[i].length);
+            copied = r + 1;
+        }
+        int run = offsets[n] - offsets[copied];
+        System.arraycopy(ids, offsets[copied], newIds, newOffsets[copied], run);
+        System.arraycopy(costs, offsets[copied], newCosts, newOffsets[copied], run);
+
+        return new int[][]{newOffsets, newIds, newCosts};
+    }
+
+    int size() {
+        return nodes.length;
+    }
+
+    //returns the dense id of the router, or -1 if it is not in this index
+    int indexOf(String simulatedIP) {
+        return ids.indexOf(simulatedIP);
+    }
+}
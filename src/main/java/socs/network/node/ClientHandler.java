@@ -1,325 +1,334 @@
 package socs.network.node;
 
 import socs.network.message.LSA;
+import socs.network.message.LSAHeader;
 import socs.network.message.LinkDescription;
 import socs.network.message.SOSPFPacket;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.util.LinkedList;
-import java.util.concurrent.TimeUnit;
+import java.util.Vector;
 
-class ClientHandler implements Runnable {
+/**
+ * Dispatches every packet arriving on one neighbor session. The session calls {@link #dispatch} with each message it
+ * decodes, from its own reading thread or from whatever feeds it.
+ */
+class ClientHandler {
 
-    private Socket listener;
+    private Session session;
     private Router router;
 
-    public ClientHandler(Socket listener, Router router) {
-        this.listener = listener;
+    public ClientHandler(Session session, Router router) {
+        this.session = session;
         this.router = router;
+        session.traffic = router.traffic;
     }
 
-    public void run() {
-        try {
-
-            //open the input and output streams
-            ObjectInputStream inStream = new ObjectInputStream(listener.getInputStream());
-            ObjectOutputStream outStream = new ObjectOutputStream(listener.getOutputStream());
-
-            try {
-
-                //get incoming packet
-                Object request = inStream.readObject();
-
-                if (request != null) {
-
-                    // check to see if received request is a string (this only happens with attach) and handle it accordingly
-                    if (request instanceof String) {
-
-                        String request_new = (String) request;
-
-
-                        //check to make sure I entered right simulated IP else path finding will get screwed up!
-                        if (request_new.equals(router.rd.simulatedIPAddress)) {
-                            outStream.writeObject("Ok.");
-                        } else {
-                            outStream.writeObject("You seem to have entered the wrong simulated IP!");
-                        }
-
-                    } else {
-                        SOSPFPacket request_new = (SOSPFPacket) request;
-
-                        //Received a HELLO!
-                        if (request_new.sospfType == 0) {
-
-                            // check to make sure link doesnt already exist so that you dont add duplicates
-                            String tempIP = request_new.srcIP;
-                            boolean exists = false;
-
-                            int port = -1;
-
-                            for (int i = 0; i < 4; i++) {
-                                if (router.ports[i] != null && router.ports[i].router2.simulatedIPAddress.equals(tempIP)) {
-                                    exists = true;
-                                    port = i;
-                                    break;
-                                }
-                            }
-
-                            //if the current link does not exist...
-                            if (!exists) {
-
-                                //find next available port
-                                int free = router.freePort();
-
-                                //no available ports, return error
-                                if (free == -1) {
-                                    outStream.writeObject("Error: All ports on the requested router are busy!");
-                                    // clean up
-                                    Router.cleanUp(outStream, inStream, listener);
-                                    return;
-                                }
+    /**
+     * hands one incoming message to the request waiting for it, or handles it as a new packet
+     */
+    void dispatch(Object request) {
 
-                                //otherwise, create the new link
-                                RouterDescription router2 = new RouterDescription();
-                                router2.processIPAddress = request_new.srcProcessIP;
-                                router2.simulatedIPAddress = request_new.srcIP;
-                                router2.processPortNumber = request_new.srcProcessPort;
-                                router.ports[free] = new Link(router.rd, router2, request_new.HelloWeight);
-                                port = free;
-                            }
+        //replies to a request sent on this session go straight to whoever is waiting for them
+        if (session.offerReply(request)) return;
 
-                            System.out.println("received HELLO from " + request_new.srcIP + ";");
-
-                            //Change the status of the client router to INIT
-                            router.ports[port].router2.status = RouterStatus.INIT;
-                            router.ports[port].router1.status = RouterStatus.INIT;
-
-                            System.out.println("set " + request_new.srcIP + " state to INIT");
+        try {
+            handle(request);
+        } catch (IOException ex) {
+            System.err.println("Had trouble with Client Handler IO connection");
+        }
+    }
 
-                            //Create outgoing packet
-                            SOSPFPacket packet = router.constructPacket(router.ports[port].router2.simulatedIPAddress, null, (short) 0);
+    /**
+     * handles one incoming packet and sends any reply over the session it came from
+     */
+    private void handle(Object request) throws IOException {
+        long receivedAt = System.nanoTime();
 
-                            outStream.writeObject(packet);
+        if (request == null) {
+            System.out.println("Error: Empty Packet!");
+            return;
+        }
 
-                            //Wait for response
-                            request_new = (SOSPFPacket) inStream.readObject();
+        // check to see if received request is a string and handle it accordingly
+        if (request instanceof String) {
+            processString((String) request);
+            return;
+        }
 
-                            //check to make sure the packet received was a HELLO
-                            if (request_new == null || request_new.sospfType != 0) {
+        SOSPFPacket request_new = (SOSPFPacket) request;
 
-                                System.out.println("Error: did not receive a HELLO back!");
+        //Received a HELLO!
+        if (request_new.sospfType == 0) {
+            processHello(request_new, true);
+        }
+        //If packet is a LSA Update
+        else if (request_new.sospfType == 1) {
+            processUpdate(request_new);
+        }
+        //it's a disconnect request
+        else if (request_new.sospfType == 3) {
+            processDisconnect(request_new);
+        }
+        //a new neighbor described its database
+        else if (request_new.sospfType == 4) {
+            processDatabaseDescription(request_new);
+        }
+        //a new neighbor asks for the LSAs it is missing
+        else if (request_new.sospfType == 5) {
+            processRequest(request_new);
+        }
+        //a DATA packet, for us or to pass on
+        else if (request_new.sospfType == 6) {
+            router.forward(request_new, receivedAt);
+        }
+        //otherwise it's a connection request
+        else {
+            processHello(request_new, false);
+        }
+    }
 
-                                // clean up
-                                Router.cleanUp(outStream, inStream, listener);
-                                return;
-                            }
+    private void processString(String request_new) throws IOException {
 
-                            System.out.println("received HELLO from " + request_new.srcIP + ";");
+        //a neighbor refused our HELLO or CONNECT, the link can never come up
+        if (request_new.startsWith("Error")) {
+            for (Link link : router.ports.links()) {
+                if (link.session == session) {
+                    router.ports.remove(link);
+                }
+            }
+            System.out.println(request_new + " Deleting link reference from port. Maybe try to attach again later.");
+            session.close();
+            return;
+        }
 
-                            router.ports[port].router2.status = RouterStatus.TWO_WAY;
-                            router.ports[port].router1.status = RouterStatus.TWO_WAY;
+        //this only happens with attach: check to make sure I entered right simulated IP else path finding will get screwed up!
+        if (request_new.equals(router.rd.simulatedIPAddress)) {
+            session.send("Ok.");
+        } else {
+            session.send("You seem to have entered the wrong simulated IP!");
+        }
+    }
 
-                            System.out.println("set " + request_new.srcIP + " state to TWO_WAY");
+    /**
+     * HELLO and CONNECT follow the same handshake: the first one from a neighbor moves the link to INIT, the next one
+     * to TWO_WAY. Each step is answered so the other side can advance too. A neighbor whose HELLO does not name us
+     * does not hold the link as TWO_WAY, so if we do, it restarted the adjacency and the handshake starts over.
+     */
+    private void processHello(SOSPFPacket request_new, boolean verbose) throws IOException {
 
-                            //broadcast LSAUPDATE to neighbors
-                            router.broadcastUpdate(null, null);
+        // check to make sure link doesnt already exist so that you dont add duplicates
+        String tempIP = request_new.srcIP;
+        Link link = router.ports.get(tempIP);
 
-                            TimeUnit.SECONDS.sleep(2);
-                            System.out.print(">> ");
+        //if the current link does not exist...
+        if (link == null) {
 
-                            // clean up
-                            Router.cleanUp(outStream, inStream, listener);
+            //create the new link at the next available port
+            RouterDescription router2 = new RouterDescription(request_new.srcProcessIP,
+                    request_new.srcProcessPort, request_new.srcIP);
 
-                        }
+            if (router.ports.add(new Link(router.rd, router2, request_new.HelloWeight)) == -1
+                    && router.ports.get(tempIP) == null) {
 
-                        //If packet is a LSA Update
-                        else if (request_new.sospfType == 1) {
+                //no available ports, return error
+                session.send("Error: All ports on the requested router are busy!");
+                session.close();
+                return;
+            }
 
-                            //check to see if sequence # is greater than current by getting the most recent LSA
-                            //from the requested source IP
-                            LSA lsa = router.lsd._store.get(request_new.srcIP);
+            //the link we just added, or the one another handler added for this neighbor at the same time
+            link = router.ports.get(tempIP);
+        }
 
-                            boolean newRouter = false;
+        router.bindSession(link, session);
+        router.keepalive.heard(link);
 
-                            //if the incoming LSA is newer than current, then update database and propagate info
-                            if (lsa == null || (request_new.lsaArray.lastElement().lsaSeqNumber > lsa.lsaSeqNumber)) {
+        //already fully adjacent, the neighbor is just acknowledging our last HELLO
+        boolean acknowledged = router.rd.simulatedIPAddress.equals(request_new.neighborID);
+        if (link.router2.status == RouterStatus.TWO_WAY && acknowledged) return;
 
-                                newRouter = lsa == null;
+        if (verbose) System.out.println("received HELLO from " + request_new.srcIP + ";");
 
-                                //see if the link between this router and the sender exists (i.e. is a direct neighbor)
-                                boolean linkExists = false;
-                                int port = -1;
+        //a neighbor that lost the adjacency, after a restart say, goes through INIT again with us, so the database
+        //exchange at TWO_WAY is run again and it learns everything we know
+        if (link.router2.status == null || link.router2.status == RouterStatus.DOWN
+                || link.router2.status == RouterStatus.TWO_WAY) {
 
-                                //compare IP address to the source's IP address
-                                for (int i = 0; i < 4; i++) {
-                                    if (router.ports[i] != null && router.ports[i].router2.simulatedIPAddress.equals(request_new.srcIP)) {
-                                        linkExists = true;
-                                        port = i;
-                                        break;
-                                    }
-                                }
+            //Change the status of the client router to INIT
+            link.router2.status = RouterStatus.INIT;
+            link.router1.status = RouterStatus.INIT;
 
-                                //if the link exists, you need to update link in port as well as your current LSA
-                                if (linkExists) {
+            if (verbose) System.out.println("set " + request_new.srcIP + " state to INIT");
 
-                                    LinkedList<LinkDescription> tempList = request_new.lsaArray.lastElement().links;
-                                    LinkDescription link = null;
+            //answer so the neighbor can move to TWO_WAY
+            session.send(router.constructPacket(link.router2.simulatedIPAddress, null, request_new.sospfType));
+            return;
+        }
 
-                                    //find the link description of current router in the LSA
-                                    for (LinkDescription ld : tempList) {
+        link.router2.status = RouterStatus.TWO_WAY;
+        link.router1.status = RouterStatus.TWO_WAY;
+        router.keepalive.watch(link);
 
-                                        //if the link description matches the current router and it has a different weight
-                                        if (ld.linkID.equals(router.rd.simulatedIPAddress)) {
-                                            link = ld;
-                                            break;
-                                        }
-                                    }
+        if (verbose) System.out.println("set " + request_new.srcIP + " state to TWO_WAY");
 
-                                    //make sure both routers are actually aware of each other
-                                    if (link != null) {
-                                        //if the LSA is saying that there is an outdated weight, then update weight in port and LinkState
-                                        if (link.tosMetrics != router.ports[port].weight && link.tosMetrics > -1) {
+        //answer so the neighbor can move to TWO_WAY as well
+        session.send(router.constructPacket(link.router2.simulatedIPAddress, null, request_new.sospfType));
 
-                                            //update link description in port
-                                            router.ports[port].weight = link.tosMetrics;
+        //broadcast LSAUPDATE to neighbors
+        router.broadcastUpdate(null, null);
 
-                                            //get current LSA from LSD
-                                            LSA current = router.lsd._store.get(router.rd.simulatedIPAddress);
+        //describe everything we know so the new neighbor can request just the LSAs it is missing
+        session.send(router.constructDatabaseDescription(link.router2.simulatedIPAddress));
 
-                                            //get new link descriptions
-                                            current.links = router.extractLinks();
+        if (verbose) System.out.print(">> ");
+    }
 
-                                            router.lsd._store.put(router.rd.simulatedIPAddress, current);
+    private void processUpdate(SOSPFPacket request_new) throws IOException {
 
-                                            router.broadcastUpdate(null, null);
+        //the LSAs of this packet that are newer than what we have, these are the ones to propagate
+        Vector<LSA> accepted = new Vector<LSA>();
 
-                                        }
-                                    }
+        //set when a neighbor holds a newer LSA of ours than we do, as after a restart
+        boolean reoriginate = false;
 
-                                }
+        for (LSA incoming : request_new.lsaArray) {
 
-                                router.lsd._store.put(request_new.srcIP, request_new.lsaArray.lastElement());
+            //check to see if sequence # is greater than current by getting the most recent LSA
+            //from the originating router
+            LSA lsa = router.lsd.get(incoming.linkStateID);
 
+            //if the incoming LSA is not newer than current, or another neighbor's copy got here first,
+            //there is nothing to update or propagate
+            if ((lsa != null && incoming.lsaSeqNumber <= lsa.lsaSeqNumber) || !router.floodFilter.firstSeen(incoming)) {
+                router.duplicateLsas.increment();
+                continue;
+            }
 
-                                //forward LSAUPDATE to all neighbors
-                                for (int i = 0; i < 4; i++) {
-                                    if (router.ports[i] != null && !router.ports[i].router2.simulatedIPAddress.equals(request_new.srcIP)) {
-                                        router.broadcastUpdate(request_new, request_new.srcIP);
+            //see if the link between this router and the originator exists (i.e. is a direct neighbor)
+            Link neighbor = router.ports.get(incoming.linkStateID);
 
-                                        if (newRouter) {
-                                            //if new router, you need to broadcast yourself so it can be aware of you
-                                            router.broadcastUpdate(null, null);
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                        //it's a disconnect request
-                        else if (request_new.sospfType == 3) {
+            //if the link exists, you need to update link in port as well as your current LSA
+            if (neighbor != null) {
 
-                            //create the response packet
-                            SOSPFPacket response = router.constructPacket(request_new.srcIP, null, (short) 3);
+                LinkDescription link = null;
 
-                            //send the response to the source so it can update it's link state database
-                            outStream.writeObject(response);
+                //find the link description of current router in the LSA
+                for (LinkDescription ld : incoming.links) {
 
-                            //proceed to update link state database
-                            int port = router.getPort(request_new.srcIP);
+                    //if the link description matches the current router and it has a different weight
+                    if (ld.linkID.equals(router.rd.simulatedIPAddress)) {
+                        link = ld;
+                        break;
+                    }
+                }
 
-                            router.ports[port] = null;
+                //make sure both routers are actually aware of each other
+                //if the LSA is saying that there is an outdated weight, then update weight in port and LinkState
+                if (link != null && link.tosMetrics != neighbor.weight && link.tosMetrics > -1) {
 
-                            router.broadcastUpdate(null, null);
+                    //update link description in port
+                    neighbor.weight = link.tosMetrics;
 
+                    //originate a new LSA with the new weight, installed LSAs are never changed in place
+                    router.broadcastUpdate(null, null);
+                }
+            }
 
-                        }
-                        //otherwise it's a connection request
-                        else {
+            //we are one more hop from the originator than the neighbor that sent it; counted only for an LSA we
+            //take, and before it is installed, since installed LSAs are never changed in place
+            incoming.hopCount++;
 
-                            // check to make sure link doesnt already exist so that you dont add duplicates
-                            String tempIP = request_new.srcIP;
-                            boolean exists = false;
+            //a newer LSA of the same router may have been installed since the check above
+            if (!router.lsd.install(incoming)) {
+                router.duplicateLsas.increment();
+                continue;
+            }
 
-                            int port = -1;
+            //our own LSA is never passed on, we replace it with a current one that has a higher sequence number
+            if (incoming.linkStateID.equals(router.rd.simulatedIPAddress)) {
+                reoriginate = true;
+                continue;
+            }
 
-                            for (int i = 0; i < 4; i++) {
-                                if (router.ports[i] != null && router.ports[i].router2.simulatedIPAddress.equals(tempIP)) {
-                                    exists = true;
-                                    port = i;
-                                    break;
-                                }
-                            }
+            //a change to a router we already knew about, see how long it took to get here
+            if (lsa != null && incoming.originatedAt > 0) {
+                router.propagationDelay.record(System.currentTimeMillis() - incoming.originatedAt);
+                router.hopCount.record(incoming.hopCount);
+            }
+            accepted.add(incoming);
+        }
 
-                            //if the current link does not exist...
-                            if (!exists) {
+        if (reoriginate) {
+            router.broadcastUpdate(null, null);
+        }
 
-                                //find next available port
-                                int free = router.freePort();
+        if (accepted.isEmpty()) return;
 
-                                //no available ports, return error
-                                if (free == -1) {
-                                    outStream.writeObject("Error: All ports on the requested router are busy!");
-                                    // clean up
-                                    Router.cleanUp(outStream, inStream, listener);
-                                    return;
-                                }
+        //propagate the accepted LSAs together, in as few packets as the per-update limit allows, and forward each
+        //LSAUPDATE once to every neighbor but the one it came from
+        for (SOSPFPacket forward : router.constructUpdates(null, accepted)) {
+            router.broadcastUpdate(forward, request_new.srcIP);
+        }
 
-                                //otherwise, create the new link
-                                RouterDescription router2 = new RouterDescription(request_new.srcProcessIP,
-                                        request_new.srcProcessPort, request_new.srcIP);
-                                router.ports[free] = new Link(router.rd, router2, request_new.HelloWeight);
-                                port = free;
-                            }
+        //a new router needs no LSA of ours: it got it in the database exchange with its first neighbor
+    }
 
+    /**
+     * requests every LSA the neighbor has that we are missing or only hold an older copy of
+     */
+    private void processDatabaseDescription(SOSPFPacket request_new) throws IOException {
 
-                            //Change the status of the client router to INIT
-                            router.ports[port].router2.status = RouterStatus.INIT;
-                            router.ports[port].router1.status = RouterStatus.INIT;
+        Vector<LSAHeader> wanted = new Vector<LSAHeader>();
 
-                            //Create outgoing packet
-                            SOSPFPacket packet = router.constructPacket(router.ports[port].router2.simulatedIPAddress, null, (short) 2);
+        for (LSAHeader header : request_new.lsaHeaders) {
+            LSA lsa = router.lsd.get(header.linkStateID);
+            if (lsa == null || lsa.lsaSeqNumber < header.lsaSeqNumber) {
+                wanted.add(header);
+            }
+        }
 
-                            outStream.writeObject(packet);
+        //we already know everything the neighbor does
+        if (wanted.isEmpty()) return;
 
-                            //Wait for response
-                            request_new = (SOSPFPacket) inStream.readObject();
+        session.send(router.constructRequest(request_new.srcIP, wanted));
+    }
 
-                            //check to make sure the packet received was a HELLO
-                            if (request_new == null || request_new.sospfType != 2) {
+    /**
+     * answers a LinkState Request with our copy of every requested LSA, which may be newer than the one requested
+     */
+    private void processRequest(SOSPFPacket request_new) throws IOException {
 
-                                System.out.println("Error: did not receive a CONNECT back!");
+        Vector<LSA> lsas = new Vector<LSA>();
 
-                                // clean up
-                                Router.cleanUp(outStream, inStream, listener);
-                                return;
-                            }
+        for (LSAHeader header : request_new.lsaHeaders) {
+            LSA lsa = router.lsd.get(header.linkStateID);
+            if (lsa != null) {
+                lsas.add(lsa);
+            }
+        }
 
-                            router.ports[port].router2.status = RouterStatus.TWO_WAY;
-                            router.ports[port].router1.status = RouterStatus.TWO_WAY;
+        //send them back in as few LSAUPDATEs as possible
+        for (SOSPFPacket packet : router.constructUpdates(request_new.srcIP, lsas)) {
+            router.updatesSent.increment();
+            session.send(packet);
+        }
+    }
 
-                            //broadcast LSAUPDATE to neighbors
-                            router.broadcastUpdate(null, null);
+    private void processDisconnect(SOSPFPacket request_new) throws IOException {
 
-                            // clean up
-                            Router.cleanUp(outStream, inStream, listener);
-                        }
-                    }
+        //create the response packet
+        SOSPFPacket response = router.constructPacket(request_new.srcIP, null, (short) 3);
 
-                } else {
-                    System.out.println("Error: Empty Packet!");
-                }
+        //send the response to the source so it can update it's link state database
+        session.send(response);
 
-            } catch (ClassNotFoundException ex) {
-                System.err.println("Corrupted packet");
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        //proceed to update link state database
+        int port = router.getPort(request_new.srcIP);
 
-        } catch (IOException ex) {
-            System.err.println("Had trouble with Client Handler IO connection");
+        if (port != -1) {
+            router.ports.remove(port);
         }
 
+        router.broadcastUpdate(null, null);
     }
 }
@@ -0,0 +1,232 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the link state database on disk so a restarted router does not have to relearn it from its neighbors. Every
+ * installed LSA is appended to a log; once the log holds enough records, the whole database is written to a
+ * snapshot and the log starts over. On restart the snapshot and then the log are memory-mapped and replayed.
+ * <p/>
+ * Both files are sequences of records:
+ * <pre>
+ * record:  length(4) crc32(4) payload
+ * payload: linkStateID(str) lsaSeqNumber(4) linkCount(2) link*
+ * link:    linkID(str) portNum(4) tosMetrics(4)
+ * str:     byteCount(2) utf-8 bytes
+ * </pre>
+ * A record cut short by a crash fails its length or checksum check and ends the replay; the log is truncated back
+ * to the last good record. Appends reach the operating system right away but are not forced to the disk, so they
+ * survive a crash of the router process, not of the machine. Snapshots are written to a temporary file and renamed,
+ * so there is always one complete snapshot.
+ */
+class DatabaseJournal {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final String LOG = "lsa.log";
+    static final String SNAPSHOT = "lsa.snapshot";
+
+    private final File dir;
+    //records appended to the log before it is folded into a new snapshot
+    private final int compactEvery;
+
+    private FileChannel log;
+    private int logged;
+    private final CRC32 crc = new CRC32();
+
+    DatabaseJournal(File dir, int compactEvery) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create data directory " + dir);
+        }
+        this.dir = dir;
+        this.compactEvery = Math.max(1, compactEvery);
+    }
+
+    /**
+     * reads back every LSA of the snapshot and then of the log, in the order they were written, and opens the log
+     * for appending after the last good record
+     */
+    synchronized List<LSA> load() throws IOException {
+        List<LSA> lsas = new ArrayList<LSA>();
+
+        File snapshot = new File(dir, SNAPSHOT);
+        if (snapshot.exists()) {
+            read(snapshot, lsas);
+        }
+
+        int before = lsas.size();
+        long end = new File(dir, LOG).exists() ? read(new File(dir, LOG), lsas) : 0;
+        logged = lsas.size() - before;
+
+        log = new RandomAccessFile(new File(dir, LOG), "rw").getChannel();
+        log.truncate(end);
+        log.position(end);
+        return lsas;
+    }
+
+    /**
+     * appends the LSA to the log
+     *
+     * @return true once the log holds enough records that it should be compacted
+     */
+    synchronized boolean append(LSA lsa) throws IOException {
+        ByteBuffer record = encode(lsa);
+        while (record.hasRemaining()) {
+            log.write(record);
+        }
+        return ++logged >= compactEvery;
+    }
+
+    /**
+     * writes the given LSAs as the new snapshot and empties the log. Every LSA logged so far must be among them, or
+     * superseded by one of them.
+     */
+    synchronized void compact(Collection<LSA> lsas) throws IOException {
+        File temporary = new File(dir, SNAPSHOT + ".tmp");
+
+        RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            channel.truncate(0);
+            for (LSA lsa : lsas) {
+                ByteBuffer record = encode(lsa);
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+            channel.force(true);
+        } finally {
+            file.close();
+        }
+
+        File snapshot = new File(dir, SNAPSHOT);
+        if (!temporary.renameTo(snapshot) && !(snapshot.delete() && temporary.renameTo(snapshot))) {
+            throw new IOException("Cannot replace snapshot " + snapshot);
+        }
+
+        log.truncate(0);
+        log.position(0);
+        logged = 0;
+    }
+
+    //adds every good record of the file to lsas and returns the offset just past the last one
+    private long read(File file, List<LSA> lsas) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            while (buffer.remaining() >= 8) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    buffer.position(start);
+                    break;
+                }
+
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    buffer.position(start);
+                    break;
+                }
+
+                lsas.add(decode(ByteBuffer.wrap(payload)));
+            }
+            return buffer.position();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private ByteBuffer encode(LSA lsa) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        output.writeInt(0);
+        output.writeInt(0);
+        writeString(output, lsa.linkStateID);
+        output.writeInt(lsa.lsaSeqNumber);
+
+        if (lsa.links.size() > 0xffff) {
+            throw new IOException("Too many links in the LSA of " + lsa.linkStateID);
+        }
+        output.writeShort(lsa.links.size());
+        for (LinkDescription ld : lsa.links) {
+            writeString(output, ld.linkID);
+            output.writeInt(ld.portNum);
+            output.writeInt(ld.tosMetrics);
+        }
+
+        //records written before prefixes were advertised end here
+        if (lsa.prefixes.size() > 0xffff) {
+            throw new IOException("Too many prefixes in the LSA of " + lsa.linkStateID);
+        }
+        output.writeShort(lsa.prefixes.size());
+        for (String prefix : lsa.prefixes) {
+            writeString(output, prefix);
+        }
+        output.flush();
+
+        //fill in the header now that the payload is known
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        crc.reset();
+        crc.update(record.array(), 8, record.limit() - 8);
+        record.putInt(0, record.limit() - 8);
+        record.putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    private static LSA decode(ByteBuffer payload) {
+        LSA lsa = new LSA();
+        lsa.linkStateID = readString(payload);
+        lsa.lsaSeqNumber = payload.getInt();
+
+        int links = payload.getShort() & 0xffff;
+        for (int i = 0; i < links; i++) {
+            LinkDescription ld = new LinkDescription();
+            ld.linkID = readString(payload);
+            ld.portNum = payload.getInt();
+            ld.tosMetrics = payload.getInt();
+            lsa.links.add(ld);
+        }
+
+        if (payload.hasRemaining()) {
+            int prefixes = payload.getShort() & 0xffff;
+            for (int i = 0; i < prefixes; i++) {
+                lsa.prefixes.add(readString(payload));
+            }
+        }
+        return lsa;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
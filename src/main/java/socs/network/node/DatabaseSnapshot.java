@@ -0,0 +1,44 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable view of one version of the link state database: the LSAs it held, the adjacency index built from them
+ * and the routing table computed over it. Readers take the latest snapshot without locking and keep using it while
+ * newer LSAs are installed.
+ */
+class DatabaseSnapshot {
+
+    final long version;
+    final AdjacencyIndex index;
+    final RoutingTable routingTable;
+
+    DatabaseSnapshot(long version, AdjacencyIndex index, RoutingTable routingTable) {
+        this.version = version;
+        this.index = index;
+        this.routingTable = routingTable;
+    }
+
+    /**
+     * returns the LSA of the router with the given simulated IP in this version, or null if there is none
+     */
+    LSA get(String simulatedIP) {
+        int v = index.indexOf(simulatedIP);
+        return v < 0 ? null : index.nodes[v];
+    }
+
+    /**
+     * returns every LSA of this version
+     */
+    List<LSA> lsas() {
+        return Collections.unmodifiableList(Arrays.asList(index.nodes));
+    }
+
+    int size() {
+        return index.size();
+    }
+}
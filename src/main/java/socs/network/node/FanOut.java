@@ -0,0 +1,76 @@
+package socs.network.node;
+
+import socs.network.message.EncodingException;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One round of sends to several neighbors, all running concurrently on the router's executor. Every send has its
+ * own timeout; a neighbor whose send fails or times out is marked down without holding up the others, while a
+ * message the codec cannot encode is only reported, since nothing was sent. The time until the last send of the
+ * round finished is recorded in the router's fan-out latency histogram.
+ */
+class FanOut {
+
+    private final Router router;
+    private final AtomicInteger remaining;
+    private final long start = System.nanoTime();
+
+    FanOut(Router router, int sends) {
+        this.router = router;
+        this.remaining = new AtomicInteger(sends);
+    }
+
+    void send(final Link link, final Object message) {
+        router.executor.execute(new Runnable() {
+            public void run() {
+                //whichever of the send and its timeout gets here first decides the outcome. The timeout starts with
+                //the send, time spent queued behind other tasks says nothing about the neighbor
+                final AtomicBoolean done = new AtomicBoolean(false);
+
+                ScheduledFuture<?> timeout = Router.scheduler.schedule(new Runnable() {
+                    public void run() {
+                        if (done.compareAndSet(false, true)) {
+                            System.err.println("Timed out sending to " + link.router2.simulatedIPAddress);
+                            router.sendTimeouts.increment();
+                            router.markDown(link);
+                            finished();
+                        }
+                    }
+                }, router.sendTimeoutMs, TimeUnit.MILLISECONDS);
+
+                IOException failure = null;
+                try {
+                    router.send(link, message);
+                } catch (IOException e) {
+                    failure = e;
+                }
+
+                if (done.compareAndSet(false, true)) {
+                    timeout.cancel(false);
+                    if (failure instanceof EncodingException) {
+                        //the message is at fault, the neighbor and its session are fine
+                        System.err.println("Couldn't encode a message for " + link.router2.simulatedIPAddress + ": "
+                                + failure.getMessage());
+                        router.sendUnencodable.increment();
+                    } else if (failure != null) {
+                        System.err.println("Couldn't get I/O for the connection to: " + link.router2.processIPAddress);
+                        router.sendFailures.increment();
+                        router.markDown(link);
+                    }
+                    finished();
+                }
+            }
+        });
+    }
+
+    private void finished() {
+        if (remaining.decrementAndGet() == 0) {
+            router.fanOutLatency.record((System.nanoTime() - start) / 1000);
+        }
+    }
+}
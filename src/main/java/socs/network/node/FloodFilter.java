@@ -0,0 +1,27 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the newest sequence number flooded for every originating router, so each LSA is accepted and forwarded
+ * once no matter how many neighbors it arrives from, or how many handler threads see it at the same time. Keeping
+ * only the newest (originator, seq) pair per router covers every older one too.
+ */
+class FloodFilter {
+
+    private final ConcurrentHashMap<String, Integer> newest = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * returns true for the first caller to see this LSA, false if it or a newer one of the same router was seen before
+     */
+    boolean firstSeen(LSA lsa) {
+        while (true) {
+            Integer seen = newest.putIfAbsent(lsa.linkStateID, lsa.lsaSeqNumber);
+            if (seen == null) return true;
+            if (lsa.lsaSeqNumber <= seen) return false;
+            if (newest.replace(lsa.linkStateID, seen, lsa.lsaSeqNumber)) return true;
+        }
+    }
+}
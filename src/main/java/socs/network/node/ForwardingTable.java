@@ -0,0 +1,200 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.util.IPv4;
+import socs.network.util.PrefixTrie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Forwarding information base of one router: for the address of every reachable router, and every prefix one of
+ * them advertises, the ports of the links its equal-cost next hops are attached at. Destinations are looked up by
+ * longest prefix match in a {@link PrefixTrie} over their 32-bit form, so a lookup allocates nothing and costs the
+ * same with millions of routes. The table is built from one database snapshot and never changes afterwards, so
+ * forwarding never runs SPF; the router builds a new table the first time it forwards after a newer snapshot was
+ * published.
+ * <p/>
+ * A prefix advertised by several routers goes to the nearest of them, over the next hops of all the nearest ones if
+ * they are equally far. Packets of one flow, a source and destination pair, always leave on the same port, while
+ * different flows are spread over every equal-cost next hop.
+ */
+class ForwardingTable {
+
+    //what lookup returns for destinations that are this router or one of the prefixes it advertises
+    static final int LOCAL = -2;
+
+    //version of the snapshot the table was built from
+    final long version;
+
+    //destination prefix => index of its next-hop ports in portSets, 0 being the empty set of our own destinations
+    private final PrefixTrie routes;
+    private final int[][] portSets;
+    //simulated IP of the neighbor each port led to when the table was built, so a port reused since is never taken
+    private final String[] neighborAt;
+
+    ForwardingTable(DatabaseSnapshot snapshot, NeighborTable ports) {
+        version = snapshot.version;
+        neighborAt = new String[ports.capacity()];
+
+        ShortestPathTree tree = snapshot.routingTable.tree;
+        int n = tree.index.size();
+        routes = new PrefixTrie(n);
+
+        //distinct next-hop sets, there are far fewer of them than destinations
+        List<int[]> sets = new ArrayList<int[]>();
+        HashMap<String, Integer> setIndex = new HashMap<String, Integer>();
+        sets.add(new int[0]);
+        setIndex.put(Arrays.toString(new int[0]), 0);
+
+        if (tree.root < 0) {
+            portSets = sets.toArray(new int[sets.size()][]);
+            return;
+        }
+
+        //port of every neighbor of the root we still have a link to, -1 for the rest
+        RoutingTable.NextHops nextHops = snapshot.routingTable.nextHops();
+        int[] portOf = new int[n];
+        Arrays.fill(portOf, -1);
+        for (int neighbor : nextHops.neighbors) {
+            String ip = tree.index.nodes[neighbor].linkStateID;
+            int port = ports.portOf(ip);
+            if (port < 0) continue;
+            portOf[neighbor] = port;
+            neighborAt[port] = ip;
+        }
+
+        //prefix, as its address and length, => {cost to the nearest router advertising it, index of its port set}
+        HashMap<Long, int[]> best = new HashMap<Long, int[]>(Math.max(16, n * 2));
+
+        for (int v = 0; v < n; v++) {
+            int set;
+            int cost;
+            if (v == tree.root) {
+                //our own destinations beat every other router's, even one a zero-cost link away
+                set = 0;
+                cost = -1;
+            } else {
+                if (!tree.isReachable(v)) continue;
+
+                int[] hops = nextHops.of(v);
+                int count = 0;
+                for (int neighbor : hops) {
+                    if (portOf[neighbor] >= 0) hops[count++] = portOf[neighbor];
+                }
+                if (count == 0) continue;
+
+                set = intern(Arrays.copyOf(hops, count), sets, setIndex);
+                cost = tree.distance[v];
+            }
+
+            LSA lsa = tree.index.nodes[v];
+            try {
+                offer(best, IPv4.parse(lsa.linkStateID), 32, cost, set, sets, setIndex);
+            } catch (IllegalArgumentException e) {
+                //a router without an IPv4 address can still advertise prefixes
+            }
+            for (String prefix : lsa.prefixes) {
+                try {
+                    offer(best, IPv4.prefixAddress(prefix), IPv4.prefixLength(prefix), cost, set, sets, setIndex);
+                } catch (IllegalArgumentException e) {
+                    //not a prefix we can route
+                }
+            }
+        }
+
+        for (Map.Entry<Long, int[]> route : best.entrySet()) {
+            long key = route.getKey();
+            routes.put((int) (key >>> 8), (int) (key & 0xff), route.getValue()[1]);
+        }
+        //every thread forwarding through the router shares the table, so it is laid out before it is published
+        routes.freeze();
+        portSets = sets.toArray(new int[sets.size()][]);
+    }
+
+    //keeps the route to the prefix through the given set if it is nearer than the one known, or as near
+    private static void offer(HashMap<Long, int[]> best, int address, int length, int cost, int set,
+                              List<int[]> sets, HashMap<String, Integer> setIndex) {
+        Long key = ((address & 0xffffffffL) << 8) | length;
+        int[] known = best.get(key);
+        if (known == null || cost < known[0]) {
+            best.put(key, new int[]{cost, set});
+        } else if (cost == known[0] && set != known[1]) {
+            //equally near routers advertise it, spread over the next hops of all of them
+            int[] a = sets.get(known[1]);
+            int[] b = sets.get(set);
+            int[] union = Arrays.copyOf(a, a.length + b.length);
+            int count = a.length;
+            for (int port : b) {
+                if (Arrays.binarySearch(a, port) < 0) union[count++] = port;
+            }
+            union = Arrays.copyOf(union, count);
+            Arrays.sort(union);
+            known[1] = intern(union, sets, setIndex);
+        }
+    }
+
+    //returns the index of the set of ports, adding it if it is new
+    private static int intern(int[] ports, List<int[]> sets, HashMap<String, Integer> setIndex) {
+        Arrays.sort(ports);
+        String key = Arrays.toString(ports);
+        Integer index = setIndex.get(key);
+        if (index == null) {
+            index = sets.size();
+            sets.add(ports);
+            setIndex.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * returns the port to forward a packet of the given flow to the destination on, LOCAL if it is meant for this
+     * router, or -1 if there is no route
+     *
+     * @param flow hash of the packet's source and destination, the same for every packet of a flow
+     */
+    int lookup(int destination, int flow) {
+        int set = routes.lookup(destination);
+        if (set < 0) return -1;
+        if (set == 0) return LOCAL;
+
+        int[] ports = portSets[set];
+        if (ports.length == 1) return ports[0];
+
+        //mix the bits so flows whose hashes only differ high up still spread
+        flow ^= flow >>> 16;
+        flow *= 0x45d9f3b;
+        flow ^= flow >>> 16;
+        return ports[(flow & 0x7fffffff) % ports.length];
+    }
+
+    /**
+     * same as {@link #lookup(int, int)} for a destination written as a dotted quad, -1 if it is not one
+     */
+    int lookup(String destinationIP, int flow) {
+        int destination;
+        try {
+            destination = IPv4.parse(destinationIP);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        return lookup(destination, flow);
+    }
+
+    /**
+     * returns the simulated IP of the neighbor the port led to when the table was built, or null if it led nowhere
+     */
+    String neighborAt(int port) {
+        return port < 0 || port >= neighborAt.length ? null : neighborAt[port];
+    }
+
+    /**
+     * returns the number of destination prefixes with a route, router addresses included
+     */
+    int size() {
+        return routes.size();
+    }
+}
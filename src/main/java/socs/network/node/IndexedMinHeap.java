@@ -0,0 +1,99 @@
+package socs.network.node;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over the dense router indices of an {@link AdjacencyIndex}. Every index can be in the heap
+ * at most once, and its key can be lowered in place (decrease-key) instead of inserting a duplicate entry.
+ */
+class IndexedMinHeap {
+
+    //heap[i] is the router index stored at heap slot i
+    private int[] heap;
+    //position[v] is the heap slot of router v, or -1 if v is not in the heap
+    private int[] position;
+    //keys[v] is the current priority of router v
+    private int[] keys;
+    private int size = 0;
+
+    IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int v) {
+        return position[v] != -1;
+    }
+
+    int key(int v) {
+        return keys[v];
+    }
+
+    //inserts v with the given key, or lowers its key if it is already queued with a larger one
+    void insertOrDecrease(int v, int key) {
+        if (contains(v)) {
+            if (key < keys[v]) {
+                keys[v] = key;
+                siftUp(position[v]);
+            }
+            return;
+        }
+
+        keys[v] = key;
+        heap[size] = v;
+        position[v] = size;
+        siftUp(size++);
+    }
+
+    //removes and returns the router index with the smallest key
+    int poll() {
+        int min = heap[0];
+        position[min] = -1;
+
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    private void siftUp(int slot) {
+        int v = heap[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (keys[heap[parent]] <= keys[v]) break;
+            heap[slot] = heap[parent];
+            position[heap[slot]] = slot;
+            slot = parent;
+        }
+        heap[slot] = v;
+        position[v] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int v = heap[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) child++;
+            if (keys[v] <= keys[heap[child]]) break;
+            heap[slot] = heap[child];
+            position[heap[slot]] = slot;
+            slot = child;
+        }
+        heap[slot] = v;
+        position[v] = slot;
+    }
+}
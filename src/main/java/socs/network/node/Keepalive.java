@@ -0,0 +1,131 @@
+package socs.network.node;
+
+import socs.network.util.Histogram;
+import socs.network.util.TimerWheel;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the adjacencies of a router alive the way OSPF does. Once a link is TWO_WAY a HELLO goes to the neighbor
+ * every hello interval, for as long as the link is in our ports, and a neighbor we have not had a HELLO from for the
+ * dead interval is torn down: its link leaves our ports, its session is closed and our LSA is re-originated without
+ * it. We keep sending it HELLOs every hello interval after that, on a fresh session, so whichever end is first to
+ * hear from the other again starts the usual handshake and the link comes back, even when both ends tore it down.
+ * <p/>
+ * Every timer of every router in the JVM lives on one shared {@link TimerWheel}. Hearing from a neighbor only
+ * stamps its link; the dead timer looks at the stamp when it fires and waits out whatever is left of the interval.
+ */
+class Keepalive {
+
+    //how late a timer may fire, far below any sensible dead interval
+    private static final long TICK_MS = 10;
+    private static final TimerWheel wheel = new TimerWheel("router-keepalive", TICK_MS, TimeUnit.MILLISECONDS, 512);
+
+    private final Router router;
+    private final long helloIntervalMs;
+    private final long deadIntervalMs;
+
+    //HELLOs sent by the timers, neighbors found dead, and how long after we last heard from them
+    final LongAdder hellosSent;
+    final LongAdder deadNeighbors;
+    final Histogram detectionTime;
+
+    /**
+     * @param helloIntervalMs 0 or less leaves every adjacency up until a send to it fails
+     * @param deadIntervalMs  how long a neighbor may go without a HELLO, at least a hello interval
+     */
+    Keepalive(Router router, long helloIntervalMs, long deadIntervalMs) {
+        this.router = router;
+        this.helloIntervalMs = helloIntervalMs;
+        this.deadIntervalMs = Math.max(helloIntervalMs, deadIntervalMs);
+
+        hellosSent = router.metrics.counter("keepalive.hellosSent");
+        deadNeighbors = router.metrics.counter("keepalive.deadNeighbors");
+        detectionTime = router.metrics.histogram("keepalive.detectionTime", "ms");
+    }
+
+    /**
+     * starts the hello and dead timers of a link that just became TWO_WAY, replacing any it had
+     */
+    void watch(Link link) {
+        if (helloIntervalMs <= 0) return;
+
+        //timers of an earlier adjacency over this link see they are stale and stop
+        Object adjacency = new Object();
+        link.adjacency = adjacency;
+        link.lastHeard = System.nanoTime();
+
+        scheduleHello(link, adjacency);
+        scheduleDeadCheck(link, adjacency, deadIntervalMs);
+    }
+
+    /**
+     * notes a HELLO from the neighbor on the link
+     */
+    void heard(Link link) {
+        link.lastHeard = System.nanoTime();
+    }
+
+    //returns true while the timers started for the adjacency should keep running, even once a failed send has
+    //marked the link down, so a neighbor that never answers again is still torn down and probed
+    private boolean watching(Link link, Object adjacency) {
+        return link.adjacency == adjacency && router.ports.get(link.router2.simulatedIPAddress) == link;
+    }
+
+    private void scheduleHello(final Link link, final Object adjacency) {
+        wheel.schedule(new Runnable() {
+            public void run() {
+                if (!watching(link, adjacency)) return;
+
+                router.sendAsync(link, router.constructHello(link));
+                hellosSent.increment();
+                scheduleHello(link, adjacency);
+            }
+        }, helloIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleDeadCheck(final Link link, final Object adjacency, long delayMs) {
+        wheel.schedule(new Runnable() {
+            public void run() {
+                if (!watching(link, adjacency)) return;
+
+                long silentMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - link.lastHeard);
+                if (silentMs < deadIntervalMs) {
+                    scheduleDeadCheck(link, adjacency, deadIntervalMs - silentMs);
+                    return;
+                }
+
+                System.err.println("No HELLO from " + link.router2.simulatedIPAddress + " for " + silentMs + " ms");
+                deadNeighbors.increment();
+                detectionTime.record(silentMs);
+                link.adjacency = null;
+                router.tearDown(link);
+                scheduleProbe(link);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    //says HELLO to a neighbor that was torn down until it is back in our ports, by its answer or any other way
+    private void scheduleProbe(final Link link) {
+        wheel.schedule(new Runnable() {
+            public void run() {
+                if (router.ports.get(link.router2.simulatedIPAddress) != null) return;
+
+                //connecting may take a while, which the wheel's thread cannot wait out
+                router.executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            router.send(link, router.constructHello(link));
+                            hellosSent.increment();
+                        } catch (IOException e) {
+                            //not reachable yet, the next probe tries again
+                        }
+                    }
+                });
+                scheduleProbe(link);
+            }
+        }, helloIntervalMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -6,6 +6,13 @@ class Link {
   RouterDescription router2;
     int weight;
 
+    //long-lived connection to router2, opened on first use and reopened if it breaks
+    Session session;
+
+    //System.nanoTime() of the last HELLO from router2, and the adjacency the keepalive timers now run for
+    volatile long lastHeard;
+    volatile Object adjacency;
+
     Link(RouterDescription r1, RouterDescription r2, int weight) {
     router1 = r1;
     router2 = r2;
@@ -2,198 +2,241 @@ package socs.network.node;
 
 import socs.network.message.LSA;
 import socs.network.message.LinkDescription;
+import socs.network.util.Histogram;
 
+import java.io.IOException;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The LSAs of every known router, safe to use from any number of threads. Writers install LSAs with a compare and
+ * set on the sequence number, so an LSA only ever replaces an older one of the same router and installs never wait
+ * for each other. Every install leads to a new immutable {@link DatabaseSnapshot} with a higher version; whichever
+ * writer finds the SPF idle builds it, folding in whatever else was installed meanwhile, while the others return
+ * straight away. Readers such as detect and the database exchange only ever see complete snapshots.
+ */
 public class LinkStateDatabase {
 
-    //linkID => LSAInstance
-    HashMap<String, LSA> _store = new HashMap<String, LSA>();
+    //a repair that invalidates more than 1/INCREMENTAL_LIMIT of the routers falls back to a full SPF run
+    private static final int INCREMENTAL_LIMIT = 4;
+
+    //linkID => LSAInstance, always the newest installed
+    final ConcurrentHashMap<String, LSA> _store = new ConcurrentHashMap<String, LSA>();
 
     private RouterDescription rd = null;
 
-    LinkStateDatabase(RouterDescription routerDescription) {
-        rd = routerDescription;
-        LSA l = initLinkStateDatabase();
-        _store.put(l.linkStateID, l);
-    }
+    //routers whose LSA changed since the latest snapshot was built
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<String>();
+    //held by the one writer building the next snapshot
+    private final ReentrantLock spfLock = new ReentrantLock();
+    private volatile DatabaseSnapshot snapshot = null;
 
+    //when set, replacing a single LSA repairs the shortest path tree instead of recomputing it
+    private boolean incrementalSpf = true;
 
-    /**
-     * output the shortest path from this router to the destination with the given IP address
-     */
-    String getShortestPath(String destinationIP) {
-
-        //initialize all the required data structures for Djikstra's algorithm
-        HashSet<LSA> confirmed = new HashSet<LSA>();
-        HashSet<LSA> tentative = new HashSet<LSA>();
-        HashMap<LSA, Integer> distance = new HashMap<LSA, Integer>();
-        HashMap<LSA, LSA> predecessors = new HashMap<LSA, LSA>();
+    //saves every installed LSA when the database is persisted
+    private volatile DatabaseJournal journal = null;
 
-        //get the source LSA and add it to the distance and tentative list
-        LSA source = this._store.get(rd.simulatedIPAddress);
-        distance.put(source, 0);
-        tentative.add(source);
+    //when set, installs leave building the next snapshot to it instead of doing it right away
+    private volatile SpfScheduler spfScheduler = null;
 
-        //while there are remaining unevaluated nodes
-        while (tentative.size() > 0) {
+    //time from the origination of a changed LSA of another router until a snapshot with it was published
+    final Histogram convergenceDelay = new Histogram("ms");
 
-            //the the closest node from the tentative list
-            LSA node = getMinimum(tentative, distance);
+    //snapshots built, how many of them by repairing the previous tree, and how long building each one took
+    final LongAdder spfRuns = new LongAdder();
+    final LongAdder spfRepairs = new LongAdder();
+    final Histogram spfDuration = new Histogram("us");
 
-            //add it to the confirmed list
-            confirmed.add(node);
+    LinkStateDatabase(RouterDescription routerDescription) {
+        this(routerDescription, true);
+    }
 
-            //remove from tentative list
-            tentative.remove(node);
+    LinkStateDatabase(RouterDescription routerDescription, boolean incrementalSpf) {
+        rd = routerDescription;
+        this.incrementalSpf = incrementalSpf;
+        LSA l = initLinkStateDatabase();
+        install(l);
+    }
 
-            //expand its neighbors and find the closest to the current node
-            findMinimalDistances(node, predecessors, distance, tentative);
-        }
 
-        LinkedList<LSA> path = getPath(this._store.get(destinationIP), predecessors);
+    /**
+     * installs the LSA if it is newer than the one held for its originating router. The snapshot is brought up to
+     * date with it by the SPF scheduler if there is one, otherwise right away unless another writer is already
+     * doing so.
+     *
+     * @return false if an LSA with the same or a higher sequence number was installed first
+     */
+    boolean install(LSA lsa) {
+        if (!replace(lsa)) return false;
 
+        save(lsa);
+        pending.add(lsa.linkStateID);
 
-        if (path == null || path.size() == 0) {
-            return "Path does not exist";
+        SpfScheduler scheduler = spfScheduler;
+        if (scheduler != null) {
+            scheduler.trigger();
+        } else {
+            publish();
         }
-
-        return pathToString(path);
-
-
+        return true;
     }
 
     /**
-     *
-     * Expands the current node by finding all the neighbors, and then adds neighbors
-     *
-     * @param node LSA
-     * @param predecessors HashMap
-     * @param distance HashMap
-     * @param tentative HashSet
+     * throttles the snapshot builds of every later install with the given scheduler, which has to run publish
      */
-    private void findMinimalDistances(LSA node, HashMap<LSA, LSA> predecessors, HashMap<LSA, Integer> distance, HashSet<LSA> tentative) {
-        //grab all the neighbors of the current node
-        LinkedList<LSA> adjacentNodes = getNeighbors(node);
-
-        //look at each neighbor node
-        for (LSA target : adjacentNodes) {
-
-            if (target == null) continue;
+    void schedule(SpfScheduler scheduler) {
+        spfScheduler = scheduler;
+    }
 
-            //if the current distance to the target (an arbitrary neighbor) is greater than the distance to the current node + the target
-            if (getShortestDistance(target, distance) > getShortestDistance(node, distance) + getDistance(node, target)) {
+    //puts the LSA in the store unless it already holds one at least as new for the same router
+    private boolean replace(LSA lsa) {
+        while (true) {
+            LSA current = _store.get(lsa.linkStateID);
+            if (current != null && lsa.lsaSeqNumber <= current.lsaSeqNumber) return false;
 
-                //add the neighbor to the distance, predecessors, and tentative list
-                distance.put(target, getShortestDistance(node, distance) + getDistance(node, target));
-                predecessors.put(target, node);
-                tentative.add(target);
-            }
+            boolean swapped = current == null
+                    ? _store.putIfAbsent(lsa.linkStateID, lsa) == null
+                    : _store.replace(lsa.linkStateID, current, lsa);
+            if (swapped) return true;
         }
     }
 
-    private int getDistance(LSA node, LSA target) {
-
-        for (LinkDescription link : node.links) {
-
-            if (link.linkID.equals(target.linkStateID)) {
-                return link.tosMetrics;
+    /**
+     * installs every LSA the journal kept from an earlier run, our own included so its sequence number carries on,
+     * and saves every LSA installed from now on to it
+     *
+     * @return the number of LSAs restored
+     */
+    int restore(DatabaseJournal journal) throws IOException {
+        int restored = 0;
+        for (LSA lsa : journal.load()) {
+            if (replace(lsa)) {
+                pending.add(lsa.linkStateID);
+                restored++;
             }
         }
-        throw new RuntimeException("Should not happen");
+
+        //a single snapshot for everything restored
+        publish();
+        this.journal = journal;
+        return restored;
     }
 
-    private LinkedList<LSA> getNeighbors(LSA node) {
-        LinkedList<LSA> neighbors = new LinkedList<LSA>();
+    //logs an installed LSA, folding the log into a new snapshot when it has grown long enough
+    private void save(LSA lsa) {
+        DatabaseJournal journal = this.journal;
+        if (journal == null) return;
 
-        for (LinkDescription link : node.links) {
-            LSA temp = _store.get(link.linkID);
-            neighbors.add(temp);
+        try {
+            //the live view is enough: whatever was logged before was installed before the snapshot starts reading it
+            if (journal.append(lsa)) journal.compact(_store.values());
+        } catch (IOException e) {
+            System.err.println("Couldn't save the LSA of " + lsa.linkStateID + " to disk");
         }
-        return neighbors;
     }
 
-    //finds the link with the minimal distance
-    private LSA getMinimum(Set<LSA> tentative, HashMap<LSA, Integer> distance) {
-        LSA minimum = null;
-
-        //for all routers in the tenative list..
-        for (LSA router : tentative) {
-
-            //if minimum value has not been set yet then set first router to minimum
-            minimum = (minimum == null || getShortestDistance(router, distance) <
-                    getShortestDistance(minimum, distance)) ? router : minimum;
-        }
-        return minimum;
+    /**
+     * returns the newest installed LSA of the given router, or null if there is none
+     */
+    LSA get(String simulatedIP) {
+        return _store.get(simulatedIP);
     }
 
-    private int getShortestDistance(LSA destination, HashMap<LSA, Integer> distance) {
+    /**
+     * returns the newest installed LSA of every router, which may be ahead of the latest snapshot
+     */
+    Collection<LSA> lsas() {
+        return Collections.unmodifiableCollection(_store.values());
+    }
 
-        return (distance.get(destination) == null) ? Integer.MAX_VALUE : distance.get(destination);
+    /**
+     * returns the latest snapshot of the database
+     */
+    DatabaseSnapshot snapshot() {
+        return snapshot;
     }
 
-    /*
-     * This method returns the path from the source to the selected target and
-     * NULL if no path exists
+    /**
+     * returns the routing table of the latest snapshot
      */
-    @org.jetbrains.annotations.Nullable
-    private LinkedList<LSA> getPath(LSA target, HashMap<LSA, LSA> predecessors) {
-        LinkedList<LSA> path = new LinkedList<LSA>();
-        LSA step = target;
-
-        // check if a path exists
-        if (predecessors.get(step) == null) {
-            return null;
-        }
+    RoutingTable getRoutingTable() {
+        return snapshot.routingTable;
+    }
 
-        path.add(step);
+    /**
+     * output the shortest path from this router to the destination with the given IP address
+     */
+    String getShortestPath(String destinationIP) {
+        return snapshot.routingTable.getShortestPath(destinationIP);
+    }
 
-        while (predecessors.get(step) != null) {
-            step = predecessors.get(step);
-            path.add(step);
+    //builds snapshots until no change is left pending, unless another writer is already building one. A writer
+    //always queues its change before trying the lock, so the one holding it is sure to see the change on its next check
+    void publish() {
+        while (!pending.isEmpty() && spfLock.tryLock()) {
+            try {
+                Set<String> changed = new HashSet<String>();
+                String id;
+                while ((id = pending.poll()) != null) {
+                    changed.add(id);
+                }
+                if (!changed.isEmpty()) {
+                    DatabaseSnapshot previous = snapshot;
+                    long start = System.nanoTime();
+                    snapshot = nextSnapshot(previous, changed);
+                    spfDuration.record((System.nanoTime() - start) / 1000);
+                    spfRuns.increment();
+                    recordConvergence(previous, changed);
+                }
+            } finally {
+                spfLock.unlock();
+            }
         }
-
-        // Put it into the correct order
-        Collections.reverse(path);
-
-        return path;
     }
 
-    private String pathToString(LinkedList<LSA> path) {
-        //process the path to get the proper output
-        String output = "";
+    //only LSAs that replace one we already had count, the first LSA of a router tells nothing about how fast a
+    //change spreads, and may well have been originated long before we started
+    private void recordConvergence(DatabaseSnapshot previous, Set<String> changed) {
+        if (previous == null) return;
 
-        ListIterator<LSA> listIterator = path.listIterator();
+        long now = System.currentTimeMillis();
+        for (String id : changed) {
+            if (id.equals(rd.simulatedIPAddress) || previous.get(id) == null) continue;
 
-        while (listIterator.hasNext()) {
-            LSA current = listIterator.next();
-
-            String ip = current.linkStateID;
-
-
-            if (listIterator.hasNext()) {
-                String arrow = " -> ";
+            LSA lsa = snapshot.get(id);
+            if (lsa != null && lsa.originatedAt > 0) {
+                convergenceDelay.record(now - lsa.originatedAt);
+            }
+        }
+    }
 
-                String neighbor = listIterator.next().linkStateID;
-                listIterator.previous();
+    private DatabaseSnapshot nextSnapshot(DatabaseSnapshot previous, Set<String> changed) {
+        long version = previous == null ? 1 : previous.version + 1;
 
-                int weight = -1;
+        //only one known router's links changed, so the old tree can be repaired
+        if (incrementalSpf && previous != null && changed.size() == 1) {
+            String id = changed.iterator().next();
+            if (previous.index.indexOf(id) >= 0) {
+                AdjacencyIndex index = new AdjacencyIndex(previous.index, _store.get(id), version);
 
-                for (LinkDescription ld : current.links) {
-                    if (ld.linkID.equals(neighbor)) {
-                        weight = ld.tosMetrics;
-                    }
+                ShortestPathTree tree = ShortestPathTree.repair(previous.routingTable.tree, index, index.indexOf(id),
+                        index.size() / INCREMENTAL_LIMIT);
+                if (tree != null) {
+                    spfRepairs.increment();
+                    return new DatabaseSnapshot(version, index, new RoutingTable(tree));
                 }
-
-                String w = " (" + weight + ") ";
-
-                output = output + ip + " " + arrow + w;
-            } else {
-                output = output + " " + ip;
             }
         }
 
-        return output;
+        //copied first, since other writers keep installing while the index is built
+        AdjacencyIndex index = new AdjacencyIndex(new HashMap<String, LSA>(_store),
+                previous == null ? RouterIds.EMPTY : previous.index.ids, version);
+        ShortestPathTree tree = new ShortestPathTree(index, index.indexOf(rd.simulatedIPAddress));
+        return new DatabaseSnapshot(version, index, new RoutingTable(tree));
     }
 
   //initialize the linkstate database by adding an entry about the router itself
@@ -212,7 +255,7 @@ public class LinkStateDatabase {
 
   public String toString() {
     StringBuilder sb = new StringBuilder();
-    for (LSA lsa: _store.values()) {
+    for (LSA lsa: snapshot.lsas()) {
         sb.append(lsa.linkStateID).append("(").append(lsa.lsaSeqNumber).append(")").append(":\t");
       for (LinkDescription ld : lsa.links) {
         sb.append(ld.linkID).append(",").append(ld.portNum).append(",").
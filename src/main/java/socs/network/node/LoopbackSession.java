@@ -0,0 +1,95 @@
+package socs.network.node;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One end of an in-memory session of the {@link LoopbackTransport}. Sending encodes the message and queues the bytes
+ * at the other end, which decodes and dispatches them in order on its router's executor, one message at a time, so
+ * a send never blocks and never runs the neighbor's handler on the sender's thread.
+ */
+class LoopbackSession extends Session {
+
+    private final LoopbackTransport transport;
+    private final Router router;
+    private final ClientHandler handler;
+    private LoopbackSession peer;
+
+    private final ConcurrentLinkedQueue<byte[]> inbox = new ConcurrentLinkedQueue<byte[]>();
+    //set while a task is draining the inbox
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private volatile boolean open = true;
+
+    LoopbackSession(LoopbackTransport transport, Router router) {
+        this.transport = transport;
+        this.router = router;
+        this.handler = new ClientHandler(this, router);
+    }
+
+    //joins the two ends of a new session
+    void connect(LoopbackSession other) {
+        peer = other;
+        other.peer = this;
+    }
+
+    void send(Object message) throws IOException {
+        if (!open) {
+            throw new IOException("Session is closed");
+        }
+
+        byte[] frame = router.codec.encode(message);
+        transport.delivered(frame.length);
+        sent(message, frame.length);
+        peer.deliver(frame);
+    }
+
+    private void deliver(byte[] frame) {
+        if (!open) return;
+
+        inbox.add(frame);
+        if (draining.compareAndSet(false, true)) {
+            router.executor.execute(new Runnable() {
+                public void run() {
+                    drain();
+                }
+            });
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            byte[] frame;
+            while ((frame = inbox.poll()) != null) {
+                try {
+                    Object message = router.codec.decode(frame);
+                    received(message, frame.length);
+                    handler.dispatch(message);
+                } catch (IOException e) {
+                    System.err.println("Dropped a corrupted packet");
+                }
+            }
+
+            //a message queued after the last poll but before this point would otherwise never be drained
+            draining.set(false);
+            if (inbox.isEmpty() || !draining.compareAndSet(false, true)) return;
+        }
+    }
+
+    void close() {
+        if (!open) return;
+        open = false;
+        inbox.clear();
+
+        //like a socket, closing one end ends the session for the other too
+        LoopbackSession other = peer;
+        if (other != null && other.open) {
+            other.router.sessionClosed(other);
+            other.close();
+        }
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+}
@@ -0,0 +1,62 @@
+package socs.network.node;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory network joining every router registered with it, for running many routers in one JVM. A session is a
+ * pair of {@link LoopbackSession}s; every message still goes through the routers' codec, so neighbors never share
+ * packet objects and the byte counts match what a socket would carry. Routers are told apart by process port alone,
+ * as if they all ran on one host.
+ */
+public class LoopbackTransport implements Transport {
+
+    private final ConcurrentHashMap<Short, Router> routers = new ConcurrentHashMap<Short, Router>();
+
+    //everything carried so far, and when the last message was
+    private final AtomicLong packets = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile long lastDelivery = System.nanoTime();
+
+    /**
+     * makes the router reachable at its process port
+     */
+    public void register(Router router) {
+        routers.put(router.rd.processPortNumber, router);
+    }
+
+    public Session connect(Router router, String processIP, short processPort) throws IOException {
+        Router remote = routers.get(processPort);
+        if (remote == null) {
+            throw new IOException("Connection refused: no router at port " + processPort);
+        }
+
+        LoopbackSession local = new LoopbackSession(this, router);
+        LoopbackSession accepted = new LoopbackSession(this, remote);
+        local.connect(accepted);
+        return local;
+    }
+
+    //called for every message handed to a session
+    void delivered(int length) {
+        packets.incrementAndGet();
+        bytes.addAndGet(length);
+        lastDelivery = System.nanoTime();
+    }
+
+    public long getPackets() {
+        return packets.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * returns the System.nanoTime() of the last message handed to a session
+     */
+    public long getLastDelivery() {
+        return lastDelivery;
+    }
+}
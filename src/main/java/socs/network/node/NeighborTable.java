@@ -0,0 +1,117 @@
+package socs.network.node;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The ports of a router and the link attached at each of them, indexed both by port number and by the neighbor's
+ * simulated IP so every lookup is constant time whatever the number of ports. New links take the lowest free port,
+ * as they always have. Lookups and {@link #links()} never lock and are safe from any handler thread; adding and
+ * removing links is serialized.
+ */
+class NeighborTable {
+
+    private final AtomicReferenceArray<Link> byPort;
+    //neighbor's simulated IP => port its link is attached at
+    private final ConcurrentHashMap<String, Integer> byIP = new ConcurrentHashMap<String, Integer>();
+    //ports in use, only touched while holding the table's lock
+    private final BitSet used = new BitSet();
+    //every attached link in port order, replaced on each change so readers can iterate it freely
+    private volatile List<Link> links = Collections.emptyList();
+
+    NeighborTable(int capacity) {
+        byPort = new AtomicReferenceArray<Link>(capacity);
+    }
+
+    int capacity() {
+        return byPort.length();
+    }
+
+    /**
+     * returns the link attached at the given port, or null if the port is free or does not exist
+     */
+    Link get(int port) {
+        return port < 0 || port >= byPort.length() ? null : byPort.get(port);
+    }
+
+    /**
+     * returns the link to the neighbor with the given simulated IP, or null if there is none
+     */
+    Link get(String simulatedIP) {
+        Integer port = byIP.get(simulatedIP);
+        return port == null ? null : byPort.get(port);
+    }
+
+    /**
+     * returns the port the link to the neighbor with the given simulated IP is attached at, or -1 if there is none
+     */
+    int portOf(String simulatedIP) {
+        Integer port = byIP.get(simulatedIP);
+        return port == null ? -1 : port;
+    }
+
+    /**
+     * attaches the link at the lowest free port
+     *
+     * @return the port, or -1 if every port is taken or the neighbor already has a link
+     */
+    synchronized int add(Link link) {
+        int port = used.nextClearBit(0);
+        if (port >= byPort.length() || byIP.containsKey(link.router2.simulatedIPAddress)) return -1;
+
+        used.set(port);
+        byPort.set(port, link);
+        byIP.put(link.router2.simulatedIPAddress, port);
+        refresh();
+        return port;
+    }
+
+    /**
+     * detaches the link at the given port, returning it, or null if the port was free
+     */
+    synchronized Link remove(int port) {
+        Link link = get(port);
+        if (link == null) return null;
+
+        used.clear(port);
+        byPort.set(port, null);
+        byIP.remove(link.router2.simulatedIPAddress);
+        refresh();
+        return link;
+    }
+
+    /**
+     * detaches the given link if it is still attached
+     */
+    synchronized boolean remove(Link link) {
+        int port = portOf(link.router2.simulatedIPAddress);
+        return port != -1 && byPort.get(port) == link && remove(port) != null;
+    }
+
+    /**
+     * returns every attached link in port order, as of the last change
+     */
+    List<Link> links() {
+        return links;
+    }
+
+    boolean isEmpty() {
+        return links.isEmpty();
+    }
+
+    boolean isFull() {
+        return links.size() == byPort.length();
+    }
+
+    private void refresh() {
+        List<Link> attached = new ArrayList<Link>(byIP.size());
+        for (int port = used.nextSetBit(0); port >= 0; port = used.nextSetBit(port + 1)) {
+            attached.add(byPort.get(port));
+        }
+        links = Collections.unmodifiableList(attached);
+    }
+}
@@ -0,0 +1,181 @@
+package socs.network.node;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking alternative to {@link Server}. A small fixed set of event loops, each with its own selector, reads
+ * frames from every session and hands them to the session's {@link ClientHandler} on the router's executor, so the
+ * number of threads no longer grows with the number of connections. It is the router's {@link Transport} as well, so the sessions the router opens to
+ * its neighbors are served by the same loops as the ones it accepts.
+ */
+public class NioServer implements Transport {
+
+    private final EventLoop[] loops;
+    private boolean started = false;
+    private int next = 0;
+
+    public NioServer(int threads) {
+        this.loops = new EventLoop[Math.max(1, threads)];
+    }
+
+    /**
+     * returns the task accepting every connection made to the router's process port
+     */
+    public Runnable acceptor(final Router router) {
+        return new Runnable() {
+            public void run() {
+                try {
+                    //opens a channel that will constantly be looking for incoming requests
+                    ServerSocketChannel server = ServerSocketChannel.open();
+                    server.socket().bind(new InetSocketAddress(router.rd.processPortNumber));
+
+                    while (true) {
+
+                        // hand every accepted connection to the event loops in turn
+                        SocketChannel channel = server.accept();
+                        serve(channel, router);
+                    }
+                } catch (IOException ex) {
+                    System.err.println("Error with server side of the router");
+                }
+            }
+        };
+    }
+
+    public Session connect(Router router, String processIP, short processPort) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            //the caller needs the session right away, so only the connect itself blocks
+            channel.socket().connect(new InetSocketAddress(processIP, processPort), SocketSession.CONNECT_TIMEOUT_MS);
+            return serve(channel, router);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    //hands a connected channel to the next event loop
+    private NioSession serve(SocketChannel channel, Router router) throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+
+        EventLoop loop = nextLoop();
+        NioSession session = new NioSession(channel, router, loop);
+        loop.register(session);
+        return session;
+    }
+
+    //starts the event loops the first time one is needed
+    private synchronized EventLoop nextLoop() throws IOException {
+        if (!started) {
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop();
+                Thread thread = new Thread(loops[i], "nio-loop-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            started = true;
+        }
+
+        EventLoop loop = loops[next];
+        next = (next + 1) % loops.length;
+        return loop;
+    }
+
+    /**
+     * one selector thread serving any number of sessions
+     */
+    static class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<NioSession> registrations = new ConcurrentLinkedQueue<NioSession>();
+        private final ConcurrentLinkedQueue<NioSession> writeRequests = new ConcurrentLinkedQueue<NioSession>();
+        private volatile Thread thread;
+
+        EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        void register(NioSession session) {
+            registrations.add(session);
+            selector.wakeup();
+        }
+
+        //called after a frame was queued on the session, from any thread
+        void requestWrite(NioSession session) {
+            writeRequests.add(session);
+            if (Thread.currentThread() != thread) {
+                selector.wakeup();
+            }
+        }
+
+        public void run() {
+            thread = Thread.currentThread();
+
+            while (true) {
+                try {
+                    //pick up work queued since the last pass, including frames queued by this thread
+                    NioSession session;
+                    while ((session = registrations.poll()) != null) {
+                        try {
+                            session.register(selector);
+                        } catch (IOException ex) {
+                            //closed before it got here
+                            closeSession(session);
+                        }
+                    }
+                    while ((session = writeRequests.poll()) != null) {
+                        if (session.key != null && session.key.isValid()) {
+                            session.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        }
+                    }
+
+                    selector.select();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        process(key, (NioSession) key.attachment());
+                    }
+                } catch (IOException ex) {
+                    System.err.println("Error in server event loop");
+                } catch (RuntimeException ex) {
+                    //such as a key another thread cancelled under us, the loop has to keep serving the other sessions
+                    System.err.println("Error in server event loop: " + ex);
+                }
+            }
+        }
+
+        private void process(SelectionKey key, NioSession session) {
+            try {
+                if (key.isValid() && key.isReadable() && !session.onReadable()) {
+                    closeSession(session);
+                    return;
+                }
+                if (key.isValid() && key.isWritable() && session.onWritable()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException ex) {
+                //the connection dropped or sent garbage, the next send to this neighbor opens a new one
+                closeSession(session);
+            } catch (RuntimeException ex) {
+                //a frame the codec choked on only costs the session it came from
+                System.err.println("Error while reading a packet, closing the session: " + ex);
+                closeSession(session);
+            }
+        }
+
+        private void closeSession(NioSession session) {
+            session.router.sessionClosed(session);
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package socs.network.node;
+
+import socs.network.message.EncodingException;
+import socs.network.message.PacketCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Session over a non-blocking channel owned by one event loop of the {@link NioServer}. Frames have the same layout
+ * as on a {@link SocketSession}. Reads and writes only ever happen on the event loop thread; other threads queue
+ * their frames and ask the loop to flush them. Decoded messages are handled on the router's executor, in order and
+ * one at a time like on a {@link LoopbackSession}, so a handler that blocks never stalls the loop's other sessions.
+ */
+class NioSession extends Session {
+
+    //frames longer than this are treated as a corrupted stream
+    static final int MAX_FRAME = 16 * 1024 * 1024;
+
+    private final SocketChannel channel;
+    private final PacketCodec codec;
+    private final NioServer.EventLoop loop;
+    private final ConcurrentLinkedQueue<ByteBuffer> writes = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    //decoded messages waiting for the handler, and set while a task is draining them
+    private final ConcurrentLinkedQueue<Object> inbox = new ConcurrentLinkedQueue<Object>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private final ClientHandler handler;
+    final Router router;
+    SelectionKey key;
+
+    NioSession(SocketChannel channel, Router router, NioServer.EventLoop loop) {
+        this.channel = channel;
+        this.router = router;
+        this.codec = router.codec;
+        this.loop = loop;
+        this.handler = new ClientHandler(this, router);
+    }
+
+    //starts reading the channel on the selector of the owning event loop, and writing whatever was sent before
+    void register(Selector selector) throws IOException {
+        int ops = writes.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        key = channel.register(selector, ops, this);
+    }
+
+    void send(Object message) throws IOException {
+        if (!isOpen()) {
+            throw new IOException("Session is closed");
+        }
+
+        byte[] frame = codec.encode(message);
+        if (frame.length > MAX_FRAME) {
+            throw new EncodingException("Message of " + frame.length + " bytes is longer than a frame");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + frame.length);
+        buffer.putInt(frame.length).put(frame);
+        buffer.flip();
+
+        writes.add(buffer);
+        loop.requestWrite(this);
+        sent(message, frame.length);
+    }
+
+    /**
+     * reads whatever the channel has and queues every complete frame for the handler, called by the event loop when
+     * the channel is readable
+     *
+     * @return false if the neighbor closed the connection
+     */
+    boolean onReadable() throws IOException {
+        if (channel.read(readBuffer) == -1) return false;
+
+        readBuffer.flip();
+        while (readBuffer.remaining() >= 4) {
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length < 0 || length > MAX_FRAME) {
+                throw new IOException("Corrupted frame length " + length);
+            }
+
+            //wait for the rest of the frame, growing the buffer if it cannot hold it
+            if (readBuffer.remaining() < 4 + length) {
+                if (readBuffer.capacity() < 4 + length) {
+                    ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                    larger.put(readBuffer);
+                    readBuffer = larger;
+                    return true;
+                }
+                break;
+            }
+
+            readBuffer.getInt();
+            byte[] frame = new byte[length];
+            readBuffer.get(frame);
+            Object message = codec.decode(frame);
+            received(message, length);
+            deliver(message);
+        }
+        readBuffer.compact();
+        return true;
+    }
+
+    private void deliver(Object message) {
+        inbox.add(message);
+        if (draining.compareAndSet(false, true)) {
+            router.executor.execute(new Runnable() {
+                public void run() {
+                    drain();
+                }
+            });
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Object message;
+            while ((message = inbox.poll()) != null) {
+                try {
+                    handler.dispatch(message);
+                } catch (RuntimeException ex) {
+                    //a packet the handler choked on only costs the session it came from
+                    System.err.println("Error while handling a packet, closing the session: " + ex);
+                    router.sessionClosed(this);
+                    close();
+                }
+            }
+
+            //a message queued after the last poll but before this point would otherwise never be drained
+            draining.set(false);
+            if (inbox.isEmpty() || !draining.compareAndSet(false, true)) return;
+        }
+    }
+
+    /**
+     * writes queued frames until the channel would block, called by the event loop
+     *
+     * @return true if everything queued has been written
+     */
+    boolean onWritable() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = writes.peek()) != null) {
+            channel.write(buffer);
+            if (buffer.hasRemaining()) return false;
+            writes.poll();
+        }
+        return true;
+    }
+
+    void close() {
+        inbox.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error while closing session");
+        }
+    }
+
+    boolean isOpen() {
+        return channel.isOpen();
+    }
+}
@@ -0,0 +1,100 @@
+package socs.network.node;
+
+import socs.network.util.Ticker;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Paces the origination of our own LSA, like the MinLSInterval of OSPF. A request coming in at least the minimum
+ * interval after the last origination is served right away on the caller's thread; any other waits until the
+ * interval has passed, and every request made while one is waiting is folded into it, so a burst of changes costs
+ * a single new LSA and a single sequence number.
+ */
+class OriginationScheduler {
+
+    private final ScheduledExecutorService timers;
+    private final Executor executor;
+    private final Runnable originate;
+    private final long minIntervalMs;
+    private final Ticker ticker;
+
+    //ticker reading of the last origination, 0 before the first one
+    private long lastOrigination = 0;
+    private boolean scheduled = false;
+
+    //requests for a new LSA, and those folded into one already waiting
+    final LongAdder requests = new LongAdder();
+    final LongAdder merged = new LongAdder();
+
+    /**
+     * @param timers    schedules the delayed originations
+     * @param executor  runs them, so building and flooding the LSA never holds up other timers
+     * @param originate builds our LSA from the current state of every link and floods it
+     */
+    OriginationScheduler(ScheduledExecutorService timers, Executor executor, Runnable originate, long minIntervalMs) {
+        this(timers, executor, originate, minIntervalMs, Ticker.SYSTEM);
+    }
+
+    /**
+     * @param ticker measures the time since the last origination
+     */
+    OriginationScheduler(ScheduledExecutorService timers, Executor executor, Runnable originate, long minIntervalMs,
+                         Ticker ticker) {
+        this.timers = timers;
+        this.executor = executor;
+        this.originate = originate;
+        this.minIntervalMs = Math.max(0, minIntervalMs);
+        this.ticker = ticker;
+    }
+
+    /**
+     * asks for a new LSA that takes in every change made before this call
+     */
+    void request() {
+        long delay;
+        synchronized (this) {
+            requests.increment();
+            if (scheduled) {
+                merged.increment();
+                return;
+            }
+
+            long now = ticker.read();
+            long sinceLast = lastOrigination == 0 ? Long.MAX_VALUE : TimeUnit.NANOSECONDS.toMillis(now - lastOrigination);
+            if (sinceLast >= minIntervalMs) {
+                lastOrigination = now;
+                delay = -1;
+            } else {
+                scheduled = true;
+                delay = minIntervalMs - sinceLast;
+            }
+        }
+
+        if (delay < 0) {
+            originate.run();
+            return;
+        }
+
+        timers.schedule(new Runnable() {
+            public void run() {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        originateLater();
+                    }
+                });
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void originateLater() {
+        //a request made from now on may have come too late for this LSA, so it gets its own
+        synchronized (this) {
+            scheduled = false;
+            lastOrigination = ticker.read();
+        }
+        originate.run();
+    }
+}
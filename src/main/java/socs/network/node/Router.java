@@ -1,30 +1,142 @@
 package socs.network.node;
 
 import org.jetbrains.annotations.Contract;
+import socs.network.message.BinaryCodec;
+import socs.network.message.EncodingException;
 import socs.network.message.LSA;
+import socs.network.message.LSAHeader;
 import socs.network.message.LinkDescription;
+import socs.network.message.PacketCodec;
 import socs.network.message.SOSPFPacket;
+import socs.network.message.SerializationCodec;
 import socs.network.util.Configuration;
+import socs.network.util.Histogram;
+import socs.network.util.IPv4;
+import socs.network.util.Metrics;
+import socs.network.util.TaskExecutors;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.*;
-import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 
 public class Router {
 
+    //how long to wait for the answer to an attach or disconnect request
+    static final long REQUEST_TIMEOUT_MS = 5000;
+
     LinkStateDatabase lsd;
 
+    //encodes the packets sent over neighbor sessions
+    PacketCodec codec;
+
+    //runs session handlers and outbound sends
+    Executor executor;
+
+    //reaches the other router processes
+    Transport transport;
+
+    //largest number of LSAs packed into one LSAUPDATE
+    int maxLsasPerUpdate;
+
+    //runs the per-neighbor send timeouts, one thread for every router in the JVM since the tasks are tiny
+    static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "router-timers");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    //how long a single send may take before its neighbor is marked down
+    long sendTimeoutMs;
+
+    //every counter and histogram of this router, shown by the stats command and over JMX
+    final Metrics metrics = new Metrics();
+    //packets and bytes sent and received, by type and by neighbor
+    final Traffic traffic = new Traffic(metrics);
+
+    //time until every neighbor of a send round got its packet, the sends that failed or timed out, and the messages
+    //the codec could not encode, which never reached a session
+    final Histogram fanOutLatency = metrics.histogram("flood.fanOutLatency", "us");
+    final LongAdder sendFailures = metrics.counter("send.failures");
+    final LongAdder sendTimeouts = metrics.counter("send.timeouts");
+    final LongAdder sendUnencodable = metrics.counter("send.unencodable");
+
+    //LSAs already flooded, and the LSAUPDATEs sent and duplicate LSAs dropped because of it
+    final FloodFilter floodFilter = new FloodFilter();
+    final LongAdder updatesSent = metrics.counter("flood.updatesSent");
+    final LongAdder duplicateLsas = metrics.counter("flood.duplicatesDropped");
+
+    //time from origination until a changed LSA of another router was installed here, and the hops it took
+    final Histogram propagationDelay = metrics.histogram("convergence.propagationDelay", "ms");
+    final Histogram hopCount = metrics.histogram("convergence.hopCount", "");
+
+    //handler threads reading a blocking session right now, and the time it takes to open a session
+    final LongAdder activeHandlers = metrics.counter("handlers.active");
+    final Histogram connectLatency = metrics.histogram("session.connectLatency", "us");
+    //whether exportMetrics publishes the metrics over JMX
+    private boolean exportMetrics;
+
+    //paces the origination of our own LSA, and counts the originations skipped as nothing had changed
+    OriginationScheduler originations;
+    final LongAdder unchangedOriginations = metrics.counter("origination.unchanged");
+
+    //sends the periodic HELLOs and marks down neighbors that stop sending theirs
+    Keepalive keepalive;
+
+    //hops a DATA packet may take before it is dropped, so none loops forever while the routes settle
+    static final int DATA_TTL = 64;
+
+    //forwarding table of the latest snapshot, rebuilt the first time a packet is forwarded after a newer one
+    private volatile ForwardingTable fib = null;
+    final LongAdder fibBuilds = metrics.counter("data.fibBuilds");
+    final Histogram fibBuildTime = metrics.histogram("data.fibBuildTime", "us");
+
+    //DATA packets sent from here, handed on to a next hop, taken in as their destination, and dropped
+    final LongAdder dataSent = metrics.counter("data.sent");
+    final LongAdder dataForwarded = metrics.counter("data.forwarded");
+    final LongAdder dataDelivered = metrics.counter("data.delivered");
+    final LongAdder dataNoRoute = metrics.counter("data.dropped.noRoute");
+    final LongAdder dataExpired = metrics.counter("data.dropped.ttl");
+    final LongAdder dataSendFailures = metrics.counter("data.dropped.sendFailed");
+    //time from taking in a DATA packet until it was handed to the next hop's session
+    final Histogram hopLatency = metrics.histogram("data.hopLatency", "us");
+    //hops and time from the source for the packets delivered here
+    final Histogram pathLength = metrics.histogram("data.hops", "");
+    final Histogram dataLatency = metrics.histogram("data.latency", "ms");
+
     RouterDescription rd = new RouterDescription();
-    //assuming that all routers are with 4 ports
-    Link[] ports = new Link[4];
+    //address prefixes we advertise as reachable through us, written address/length
+    final Set<String> prefixes = new CopyOnWriteArraySet<String>();
+    //the links attached at each port, 4 ports unless configured otherwise
+    NeighborTable ports;
     //flag that determines whether start has been called or not
     private boolean hasStarted = false;
 
     public Router(Configuration config) {
+        this(config, new SocketTransport());
+    }
+
+    public Router(Configuration config, Transport transport) {
+
+        this.transport = transport;
 
         //grab the necessary information from the config files
         rd.simulatedIPAddress = config.getString("socs.network.router.ip");
@@ -37,8 +149,133 @@ public class Router {
             System.err.println("Host IP does not exist");
         }
 
-        //initialize LSD
-        lsd = new LinkStateDatabase(rd);
+        ports = new NeighborTable(Math.max(1, config.getInt("socs.network.router.ports", 4)));
+
+        //prefixes to advertise from the start, more can be added with the advertise command
+        for (String prefix : config.getStringList("socs.network.router.prefixes")) {
+            try {
+                prefixes.add(IPv4.formatPrefix(IPv4.prefixAddress(prefix), IPv4.prefixLength(prefix)));
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+
+        maxLsasPerUpdate = Math.max(1, config.getInt("socs.network.router.maxLsasPerUpdate", 100));
+        sendTimeoutMs = config.getInt("socs.network.router.sendTimeoutMs", 2000);
+
+        //a HELLO every second and four missed ones before a neighbor is down, both can go well below a second
+        int helloIntervalMs = config.getInt("socs.network.router.helloIntervalMs", 1000);
+        keepalive = new Keepalive(this, helloIntervalMs,
+                config.getInt("socs.network.router.deadIntervalMs", 4 * helloIntervalMs));
+
+        //every router in the network has to use the same codec
+        codec = config.getString("socs.network.router.codec", "serialization").equals("binary")
+                ? new BinaryCodec() : new SerializationCodec();
+
+        //one platform thread per task unless the shared pool was asked for
+        executor = TaskExecutors.create(config.getString("socs.network.router.executor", TaskExecutors.PLATFORM));
+
+        //initialize LSD, repairing the shortest path tree on single LSA changes unless configured otherwise
+        lsd = new LinkStateDatabase(rd, config.getBoolean("socs.network.router.spf.incremental", true));
+
+        //pick up where the last run left off if the database is kept on disk
+        String dataDir = config.getString("socs.network.router.dataDir", null);
+        if (dataDir != null) {
+            try {
+                long start = System.nanoTime();
+                int restored = lsd.restore(new DatabaseJournal(new File(dataDir),
+                        config.getInt("socs.network.router.snapshotEvery", 1000)));
+                System.out.println("Restored " + restored + " LSAs from " + dataDir + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            } catch (IOException e) {
+                System.err.println("Couldn't restore the link state database from " + dataDir);
+            }
+        }
+
+        //bursts of changes to our links share one new LSA
+        originations = new OriginationScheduler(scheduler, executor, new Runnable() {
+            public void run() {
+                originate();
+            }
+        }, config.getInt("socs.network.router.originationIntervalMs", 100));
+        metrics.gauge("origination.requests", new Metrics.Gauge() {
+            public long value() {
+                return originations.requests.sum();
+            }
+        });
+        metrics.gauge("origination.merged", new Metrics.Gauge() {
+            public long value() {
+                return originations.merged.sum();
+            }
+        });
+
+        //from now on bursts of installs share one SPF run, unless every install should run it right away
+        if (config.getBoolean("socs.network.router.spf.throttle", true)) {
+            final SpfScheduler spfScheduler = new SpfScheduler(scheduler, executor, new Runnable() {
+                public void run() {
+                    lsd.publish();
+                }
+            }, config.getInt("socs.network.router.spf.initialDelayMs", 10),
+                    config.getInt("socs.network.router.spf.holdMs", 100),
+                    config.getInt("socs.network.router.spf.maxWaitMs", 2000));
+            lsd.schedule(spfScheduler);
+
+            metrics.gauge("spf.triggers", new Metrics.Gauge() {
+                public long value() {
+                    return spfScheduler.triggers.sum();
+                }
+            });
+            metrics.gauge("spf.coalesced", new Metrics.Gauge() {
+                public long value() {
+                    return spfScheduler.coalesced.sum();
+                }
+            });
+            metrics.gauge("spf.holdMs", new Metrics.Gauge() {
+                public long value() {
+                    return spfScheduler.currentHoldMs();
+                }
+            });
+        }
+
+        metrics.register("convergence.timeToSpf", lsd.convergenceDelay);
+        metrics.register("spf.duration", lsd.spfDuration);
+        metrics.gauge("spf.runs", new Metrics.Gauge() {
+            public long value() {
+                return lsd.spfRuns.sum();
+            }
+        });
+        metrics.gauge("spf.repairs", new Metrics.Gauge() {
+            public long value() {
+                return lsd.spfRepairs.sum();
+            }
+        });
+        metrics.gauge("lsdb.size", new Metrics.Gauge() {
+            public long value() {
+                return lsd._store.size();
+            }
+        });
+        metrics.gauge("data.fibSize", new Metrics.Gauge() {
+            public long value() {
+                ForwardingTable table = fib;
+                return table == null ? 0 : table.size();
+            }
+        });
+
+        exportMetrics = config.getBoolean("socs.network.router.jmx", true);
+    }
+
+    /**
+     * exports the metrics over JMX unless configured otherwise. Starting the MBean server takes a while, so this is
+     * left to whoever runs the router, once it is already listening.
+     */
+    public void exportMetrics() {
+        if (!exportMetrics) return;
+
+        try {
+            metrics.export("socs.network:type=Router,name=" + ObjectName.quote(rd.simulatedIPAddress));
+        } catch (JMException e) {
+            System.err.println("Couldn't export the metrics over JMX");
+        }
     }
 
 
@@ -46,75 +283,331 @@ public class Router {
      * HELPER FUNCTIONS
      */
 
-    //Checks if all the ports are empty
-    @Contract(pure = true)
-    private static boolean isEmpty(Link[] ports) {
-        for (Link port : ports) {
-            if (port != null) {
-                return false;
+    public String getSimulatedIP() {
+        return rd.simulatedIPAddress;
+    }
+
+    /**
+     * returns the sequence number of every LSA in the latest database snapshot, by originating router
+     */
+    public Map<String, Integer> getDatabaseSummary() {
+        Map<String, Integer> summary = new HashMap<String, Integer>();
+        for (LSA lsa : lsd.snapshot().lsas()) {
+            summary.put(lsa.linkStateID, lsa.lsaSeqNumber);
+        }
+        return summary;
+    }
+
+    /**
+     * returns the number of LSAUPDATE packets this router has sent
+     */
+    public long getUpdatesSent() {
+        return updatesSent.sum();
+    }
+
+    /**
+     * returns the number of DATA packets delivered to this router
+     */
+    public long getDataDelivered() {
+        return dataDelivered.sum();
+    }
+
+    /**
+     * returns the number of DATA packets this router dropped, for want of a route, of hops or of a working session
+     */
+    public long getDataDropped() {
+        return dataNoRoute.sum() + dataExpired.sum() + dataSendFailures.sum();
+    }
+
+    /**
+     * returns the time this router took to hand each DATA packet on, in microseconds
+     */
+    public Histogram getHopLatency() {
+        return hopLatency;
+    }
+
+    /**
+     * returns the hops taken by each DATA packet delivered to this router
+     */
+    public Histogram getPathLength() {
+        return pathLength;
+    }
+
+    /**
+     * returns the open session to the neighbor on the given link, connecting to it first if there is none
+     */
+    Session sessionFor(Link link) throws IOException {
+        synchronized (link) {
+            if (link.session == null || !link.session.isOpen()) {
+                link.session = openSession(link.router2.processIPAddress, link.router2.processPortNumber);
+                link.session.neighbor = link.router2.simulatedIPAddress;
             }
+            return link.session;
         }
+    }
+
+    //connects to another router process and starts dispatching everything it sends back
+    private Session openSession(String processIP, short processPort) throws IOException {
+        long start = System.nanoTime();
+        Session session = transport.connect(this, processIP, processPort);
+        connectLatency.record((System.nanoTime() - start) / 1000);
+        return session;
+    }
+
+    /**
+     * sends a message to the neighbor on the given link, reconnecting once if its session has broken since it was last used
+     */
+    void send(Link link, Object message) throws IOException {
+        Session session = sessionFor(link);
+        try {
+            session.send(message);
+        } catch (EncodingException e) {
+            //nothing went out, the session is as good as it was
+            throw e;
+        } catch (IOException e) {
+            session.close();
+            sessionClosed(session);
+            sessionFor(link).send(message);
+        }
+    }
+
+    /**
+     * sends a message to the neighbor on the given link from the executor, so a slow neighbor never holds up the caller
+     */
+    void sendAsync(Link link, Object message) {
+        new FanOut(this, 1).send(link, message);
+    }
+
+    /**
+     * returns the forwarding table of the latest database snapshot, building it if the one we have is older
+     */
+    ForwardingTable forwardingTable() {
+        DatabaseSnapshot snapshot = lsd.snapshot();
+        ForwardingTable table = fib;
+        if (table == null || table.version != snapshot.version) {
+            //two threads may both build it, they come up with the same table
+            long start = System.nanoTime();
+            table = new ForwardingTable(snapshot, ports);
+            fib = table;
+            fibBuilds.increment();
+            fibBuildTime.record((System.nanoTime() - start) / 1000);
+        }
+        return table;
+    }
+
+    /**
+     * sends a payload to the router with the given simulated IP, hop by hop along the forwarding tables
+     *
+     * @return false if it was dropped right away, having no route
+     * @throws IllegalArgumentException if the codec cannot carry the payload
+     */
+    public boolean send(String destinationIP, String payload) {
+        SOSPFPacket packet = new SOSPFPacket();
+        packet.srcProcessIP = rd.processIPAddress;
+        packet.srcProcessPort = rd.processPortNumber;
+        packet.srcIP = rd.simulatedIPAddress;
+        packet.dstIP = destinationIP;
+        packet.sospfType = 6;
+        packet.routerID = rd.simulatedIPAddress;
+        packet.payload = payload;
+        packet.ttl = DATA_TTL;
+        packet.sentAt = System.currentTimeMillis();
+
+        //a packet that cannot be encoded is refused here rather than failing at every hop
+        try {
+            codec.encode(packet);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot send this payload: " + e.getMessage());
+        }
+
+        dataSent.increment();
+        return forward(packet, System.nanoTime());
+    }
+
+    /**
+     * delivers a DATA packet if it is meant for us or a prefix we advertise, or else hands it to the next hop our
+     * forwarding table names. This only ever looks the destination up, the routes were worked out when the snapshot
+     * was published.
+     *
+     * @param receivedAt System.nanoTime() at which the packet came in
+     * @return false if the packet was dropped here, rather than handed to the next hop or delivered
+     */
+    boolean forward(SOSPFPacket packet, final long receivedAt) {
+        //every packet of a flow takes the same path, different flows spread over the equal-cost ones
+        ForwardingTable table = forwardingTable();
+        int port = table.lookup(packet.dstIP, packet.srcIP.hashCode() * 31 + packet.dstIP.hashCode());
+
+        if (port == ForwardingTable.LOCAL || packet.dstIP.equals(rd.simulatedIPAddress)) {
+            deliver(packet);
+            return true;
+        }
+
+        if (packet.ttl <= 0) {
+            dataExpired.increment();
+            return false;
+        }
+
+        final Link link = ports.get(port);
+
+        //the link may have gone down, or the port been given to another neighbor, since the table was built
+        if (link == null || link.router2.status != RouterStatus.TWO_WAY
+                || !link.router2.simulatedIPAddress.equals(table.neighborAt(port))) {
+            dataNoRoute.increment();
+            return false;
+        }
+
+        //connecting to the next hop may block, which the thread that dispatched the packet must not wait out
+        final SOSPFPacket forwarded = nextHop(packet);
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    send(link, forwarded);
+                } catch (EncodingException e) {
+                    //the packet is at fault, not the neighbor
+                    dataSendFailures.increment();
+                    sendUnencodable.increment();
+                    return;
+                } catch (IOException e) {
+                    dataSendFailures.increment();
+                    markDown(link);
+                    return;
+                }
+
+                dataForwarded.increment();
+                hopLatency.record((System.nanoTime() - receivedAt) / 1000);
+            }
+        });
         return true;
     }
 
-    //Closes a sockets and all of its associated streams
-    static void cleanUp(ObjectOutputStream output, ObjectInputStream input,
-                        Socket clientSocket) throws IOException {
+    //copy of a DATA packet as it leaves for the next hop, one hop closer to expiring; the one received stays as it came
+    private static SOSPFPacket nextHop(SOSPFPacket packet) {
+        SOSPFPacket copy = new SOSPFPacket();
+        copy.srcProcessIP = packet.srcProcessIP;
+        copy.srcProcessPort = packet.srcProcessPort;
+        copy.srcIP = packet.srcIP;
+        copy.dstIP = packet.dstIP;
+        copy.sospfType = packet.sospfType;
+        copy.routerID = packet.routerID;
+        copy.neighborID = packet.neighborID;
+        copy.payload = packet.payload;
+        copy.ttl = packet.ttl - 1;
+        copy.sentAt = packet.sentAt;
+        return copy;
+    }
+
+    //takes in a DATA packet we are the destination of
+    private void deliver(SOSPFPacket packet) {
+        int hops = DATA_TTL - packet.ttl;
+        long latency = Math.max(0, System.currentTimeMillis() - packet.sentAt);
+
+        dataDelivered.increment();
+        pathLength.record(hops);
+        dataLatency.record(latency);
+
+        System.out.println("received \"" + packet.payload + "\" for " + packet.dstIP + " from " + packet.srcIP
+                + " in " + hops + " hops, " + latency + " ms");
+    }
+
+    /**
+     * marks the link to a neighbor that stopped answering as down, so floods skip it until it says HELLO again,
+     * and re-originates our LSA without it
+     */
+    void markDown(Link link) {
+        synchronized (link) {
+            if (link.router2.status == RouterStatus.DOWN) return;
+
+            link.router2.status = RouterStatus.DOWN;
+            if (link.session != null) {
+                link.session.close();
+                link.session = null;
+            }
+        }
+
+        System.err.println("Link to " + link.router2.simulatedIPAddress + " is down");
+
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    broadcastUpdate(null, null);
+                } catch (IOException e) {
+                    System.err.println("Error while trying to broadcast update");
+                }
+            }
+        });
+    }
+
+    /**
+     * takes the link to a neighbor that stopped answering out of our ports altogether, freeing its port, and
+     * re-originates our LSA without it if it was not marked down already
+     */
+    void tearDown(Link link) {
+        if (!ports.remove(link)) return;
+
+        synchronized (link) {
+            if (link.session != null) {
+                link.session.close();
+                link.session = null;
+            }
+        }
+        markDown(link);
+    }
 
-        // close the output stream
-        if(output != null) {
-            output.close();
+    //makes the session a packet arrived on the one used to reach that neighbor, unless the link already has a working one
+    void bindSession(Link link, Session session) {
+        session.neighbor = link.router2.simulatedIPAddress;
+        synchronized (link) {
+            if (link.session == null || !link.session.isOpen()) {
+                link.session = session;
+            }
         }
+    }
 
-        // close the input stream
-        if (input != null) {
-            input.close();
+    //forgets a session that was closed so the next send to that neighbor reconnects
+    void sessionClosed(Session session) {
+        for (Link link : ports.links()) {
+            synchronized (link) {
+                if (link.session == session) {
+                    link.session = null;
+                }
+            }
         }
-        // close the socket
-        clientSocket.close();
     }
 
     //Checks if all the ports are empty
     @Contract(pure = true)
     private boolean isConnected() {
-        for (Link port : this.ports) {
-            if (port != null && port.router1.status == RouterStatus.TWO_WAY) {
+        for (Link port : this.ports.links()) {
+            if (port.router1.status == RouterStatus.TWO_WAY) {
                 return true;
             }
         }
         return false;
     }
 
-    //Returns the first free port
-    int freePort() {
-        //make sure ports are available
-        for (int i = 0; i < 4; i++) {
-            if (ports[i] == null) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
     //Constructs LSA for current router
-    private LSA constructLSA() {
+    LSA constructLSA() {
         LSA temp = new LSA();
         temp.linkStateID = this.rd.simulatedIPAddress;
 
         //check if this is the first LSA being sent and if so set seq number to 0
-        if (lsd._store.get(this.rd.simulatedIPAddress).lsaSeqNumber == Integer.MIN_VALUE) {
+        if (lsd.get(this.rd.simulatedIPAddress).lsaSeqNumber == Integer.MIN_VALUE) {
 
             temp.lsaSeqNumber = 0;
 
             //otherwise increment current # by 1
         } else {
 
-            int latest = lsd._store.get(this.rd.simulatedIPAddress).lsaSeqNumber;
+            int latest = lsd.get(this.rd.simulatedIPAddress).lsaSeqNumber;
             temp.lsaSeqNumber = latest + 1;
         }
 
         //grab all the links from the ports and create link descriptions from them
         temp.links = this.extractLinks();
+        temp.prefixes = new LinkedList<String>(prefixes);
+
+        //lets every receiver tell how long the LSA took to reach it
+        temp.originatedAt = System.currentTimeMillis();
         return temp;
     }
 
@@ -123,13 +616,13 @@ public class Router {
 
         LinkedList<LinkDescription> links = new LinkedList<LinkDescription>();
 
-        for (int i = 0; i < 4; i++) {
-            if (ports[i] != null && ports[i].router2.status != null) {
+        for (Link port : ports.links()) {
+            if (port.router2.status != null && port.router2.status != RouterStatus.DOWN) {
 
                 LinkDescription ld = new LinkDescription();
-                ld.linkID = ports[i].router2.simulatedIPAddress;
-                ld.portNum = ports[i].router2.processPortNumber;
-                ld.tosMetrics = ports[i].weight;
+                ld.linkID = port.router2.simulatedIPAddress;
+                ld.portNum = port.router2.processPortNumber;
+                ld.tosMetrics = port.weight;
                 links.add(ld);
 
             }
@@ -140,10 +633,9 @@ public class Router {
 
     //Returns weight of desired link
     private int getWeight(String dest) {
-        for (int i = 0; i < 4; i++) {
-            if (this.ports[i] != null && this.ports[i].router2.simulatedIPAddress.equals(dest)) {
-                return this.ports[i].weight;
-            }
+        Link link = ports.get(dest);
+        if (link != null) {
+            return link.weight;
         }
         System.err.println("Specified IP does not exist.");
         return -1;
@@ -152,10 +644,9 @@ public class Router {
 
     //Returns weight of desired link
     public int getPort(String dest) {
-        for (int i = 0; i < 4; i++) {
-            if (this.ports[i] != null && this.ports[i].router2.simulatedIPAddress.equals(dest)) {
-                return i;
-            }
+        int port = ports.portOf(dest);
+        if (port != -1) {
+            return port;
         }
         System.err.println("Specified IP does not exist.");
         return -1;
@@ -170,6 +661,45 @@ public class Router {
      */
     SOSPFPacket constructPacket(String dest, LSA lsa, short type) {
 
+        SOSPFPacket packet = newPacket(dest, type);
+
+        if (type == 0 || type == 2) {
+
+            packet.HelloWeight = getWeight(dest);
+            packet.neighborID = acknowledgedNeighbor(ports.get(dest));
+
+        } else if (type == 1) {
+
+            //create a temp vector and add LSA to it
+            Vector<LSA> links = new Vector<LSA>();
+            links.add(lsa);
+
+            packet.lsaArray = links;
+
+        }
+
+        return packet;
+    }
+
+    /**
+     * HELLO to the neighbor on the link, which unlike constructPacket works for a link no longer in our ports
+     */
+    SOSPFPacket constructHello(Link link) {
+        SOSPFPacket packet = newPacket(link.router2.simulatedIPAddress, (short) 0);
+        packet.HelloWeight = link.weight;
+        packet.neighborID = acknowledgedNeighbor(link);
+        return packet;
+    }
+
+    //a HELLO names the neighbor it goes to once we hold the link as TWO_WAY, so a neighbor that restarted the
+    //adjacency can tell from our HELLOs, and we from its, that the handshake has to be run again
+    private String acknowledgedNeighbor(Link link) {
+        return link != null && link.router2.status == RouterStatus.TWO_WAY ? link.router2.simulatedIPAddress : null;
+    }
+
+    //packet from this router to the destination with nothing but the addressing set
+    private SOSPFPacket newPacket(String dest, short type) {
+
         SOSPFPacket packet = new SOSPFPacket();
 
         //set the data for the packet
@@ -181,28 +711,75 @@ public class Router {
 
         //figure this one out later
         packet.routerID = "";
-        packet.neighborID = packet.srcIP;
-
-        if (type == 0 || type == 2) {
-
-            packet.HelloWeight = getWeight(dest);
 
-        } else if (type == 1) {
+        return packet;
+    }
 
-            //create a temp vector and add LSA to it
-            Vector<LSA> links = new Vector<LSA>();
-            links.add(lsa);
+    /**
+     * Constructs an LSAUPDATE carrying all of the given LSAs
+     *
+     * @param dest String of receiving IP address, or null when the packet goes to every neighbor
+     * @param lsas LSAs to carry, at most maxLsasPerUpdate of them
+     */
+    SOSPFPacket constructUpdate(String dest, Vector<LSA> lsas) {
+        SOSPFPacket packet = constructPacket(dest, null, (short) 1);
+        packet.lsaArray = lsas;
+        return packet;
+    }
 
-            packet.lsaArray = links;
+    /**
+     * Packs the given LSAs into as few LSAUPDATEs as the configured batch size allows
+     */
+    List<SOSPFPacket> constructUpdates(String dest, Collection<LSA> lsas) {
+        List<SOSPFPacket> packets = new ArrayList<SOSPFPacket>();
+        Vector<LSA> batch = new Vector<LSA>();
+
+        for (LSA lsa : lsas) {
+            batch.add(lsa);
+            if (batch.size() == maxLsasPerUpdate) {
+                packets.add(constructUpdate(dest, batch));
+                batch = new Vector<LSA>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            packets.add(constructUpdate(dest, batch));
+        }
+        return packets;
+    }
 
+    /**
+     * Constructs a Database Description listing the header of every installed LSA, including those the SPF has not
+     * taken in yet
+     *
+     * @param dest String of receiving IP address
+     */
+    SOSPFPacket constructDatabaseDescription(String dest) {
+        Vector<LSAHeader> headers = new Vector<LSAHeader>();
+        for (LSA lsa : lsd.lsas()) {
+            headers.add(new LSAHeader(lsa));
         }
 
+        SOSPFPacket packet = constructPacket(dest, null, (short) 4);
+        packet.lsaHeaders = headers;
+        return packet;
+    }
+
+    /**
+     * Constructs a LinkState Request for the LSAs with the given headers
+     *
+     * @param dest    String of receiving IP address
+     * @param headers LSAs the receiver should send back
+     */
+    SOSPFPacket constructRequest(String dest, Vector<LSAHeader> headers) {
+        SOSPFPacket packet = constructPacket(dest, null, (short) 5);
+        packet.lsaHeaders = headers;
         return packet;
     }
 
     /**
      * Either receives nothing and is in charge of creating new LSA and sending LSAUPDATE to all neighbors
-     * or is simply just forwarding a recently received LSAUPDATE. Both cases it updates its current LSA Database
+     * or is simply just forwarding a recently received LSAUPDATE. Both cases it updates its current LSA Database.
+     * A new LSA is paced by the origination scheduler, so it may be built a little later, together with other changes.
      *
      * @param forwardPacket SOSPFPacket
      * @param IP_Ignore     String
@@ -212,76 +789,114 @@ public class Router {
 
         //check to make sure you are creating a LSAUPDATE instead of forwarding
         if (forwardPacket == null) {
-            LSA lsa = constructLSA();
+            originations.request();
 
-            //update LinkStateDatabase
-            lsd._store.put(lsa.linkStateID, lsa);
+            //otherwise you are forwarding a packet
+        } else {
 
-            //send LSAUPDATE through all non-null ports
-            for (int i = 0; i < 4; i++) {
-                if (ports[i] != null) {
+            //forward packet to all non-null ports that are not down except the one it came from, to all of them at once
+            List<Link> targets = floodTargets(IP_Ignore);
+            FanOut fanOut = new FanOut(this, targets.size());
 
-                    Socket clientSocket = new Socket(ports[i].router2.processIPAddress, ports[i].router2.processPortNumber);
+            for (Link link : targets) {
+
+                //broadcast the LSAUPDATE packet
+                updatesSent.increment();
+                fanOut.send(link, forwardPacket);
+            }
+        }
+    }
 
-                    ObjectOutputStream output = new ObjectOutputStream(clientSocket.getOutputStream());
+    /**
+     * builds our LSA from the current state of every link and floods it, unless it would advertise the same links
+     * and prefixes as the one already installed
+     */
+    private void originate() {
+        LSA current = lsd.get(rd.simulatedIPAddress);
+        if (sameLinks(current.links, extractLinks())
+                && current.prefixes.size() == prefixes.size() && prefixes.containsAll(current.prefixes)) {
+            unchangedOriginations.increment();
+            return;
+        }
 
-                    //construct LSAUPDATE to broadcast across all ports
-                    SOSPFPacket LSAUPDATE = constructPacket(this.ports[i].router2.simulatedIPAddress, lsa, (short) 1);
+        LSA lsa;
 
-                    //broadcast the LSAUPDATE packet
-                    output.writeObject(LSAUPDATE);
+        //update LinkStateDatabase, building the LSA again if another thread originated one with the same sequence
+        //number first. Our own LSA coming back from a neighbor is then dropped as already seen
+        do {
+            lsa = constructLSA();
+        } while (!lsd.install(lsa));
+        floodFilter.firstSeen(lsa);
 
-                    cleanUp(output, null, clientSocket);
-                }
-            }
-            //otherwise you are forwarding a packet
-        } else {
+        //send LSAUPDATE through all non-null ports that are not down, to all of them at once
+        List<Link> targets = floodTargets(null);
+        FanOut fanOut = new FanOut(this, targets.size());
 
-            //forward packet to all non-null ports
-            for (int i = 0; i < 4; i++) {
-                if (ports[i] != null) {
+        for (Link link : targets) {
 
-                    Socket clientSocket = new Socket(ports[i].router2.processIPAddress, ports[i].router2.processPortNumber);
+            //construct LSAUPDATE to broadcast across all ports
+            SOSPFPacket LSAUPDATE = constructPacket(link.router2.simulatedIPAddress, lsa, (short) 1);
 
-                    ObjectOutputStream output = new ObjectOutputStream(clientSocket.getOutputStream());
+            //broadcast the LSAUPDATE packet
+            updatesSent.increment();
+            fanOut.send(link, LSAUPDATE);
+        }
+    }
 
-                    //broadcast the LSAUPDATE packet
-                    output.writeObject(forwardPacket);
+    //true if both lists describe the same links, in any order
+    private static boolean sameLinks(List<LinkDescription> a, List<LinkDescription> b) {
+        if (a.size() != b.size()) return false;
 
-                    cleanUp(output, null, clientSocket);
+        for (LinkDescription x : a) {
+            boolean found = false;
+            for (LinkDescription y : b) {
+                if (x.linkID.equals(y.linkID) && x.portNum == y.portNum && x.tosMetrics == y.tosMetrics) {
+                    found = true;
+                    break;
                 }
             }
+            if (!found) return false;
         }
+        return true;
+    }
+
+    //returns the links a flood goes out on, leaving out the neighbor with the given IP if there is one
+    private List<Link> floodTargets(String IP_Ignore) {
+        List<Link> targets = new ArrayList<Link>();
+        for (Link link : ports.links()) {
+            if (link.router2.status != RouterStatus.DOWN
+                    && !link.router2.simulatedIPAddress.equals(IP_Ignore)) {
+                targets.add(link);
+            }
+        }
+        return targets;
     }
 
-    //creates the link between host router and remote router
-    private void createAttachment(String processIP, short processPort, String simulatedIP, short weight, RouterDescription remote, int free) {
+    //creates the link between host router and remote router, returning it or null if the remote router refused
+    private Link createAttachment(String processIP, short processPort, String simulatedIP, short weight, RouterDescription remote) {
 
         // attempt to connect with desired router
         try {
 
-            Socket clientSocket = new Socket(processIP, processPort);
-
-            ObjectOutputStream output = new ObjectOutputStream(clientSocket.getOutputStream());
-            ObjectInputStream input = new ObjectInputStream(clientSocket.getInputStream());
+            Session session = openSession(processIP, processPort);
 
             // make sure the router is "connectable"
-            output.writeObject(simulatedIP);
-
-            try {
-                String incoming = (String) input.readObject();
-                if (incoming.equals("Ok.")) {
-
-                    // if all goes well, assign the new router link to the available port
-                    ports[free] = new Link(rd, remote, weight);
-                    cleanUp(output, input, clientSocket);
-                } else {
-                    System.err.println(incoming);
-                }
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException(e);
-            } catch (NullPointerException e) {
-                throw new RuntimeException(e);
+            Object incoming = session.request(simulatedIP, Session.STRING_REPLY, REQUEST_TIMEOUT_MS);
+
+            if ("Ok.".equals(incoming)) {
+
+                // if all goes well, assign the new router link to the first available port and keep its session open
+                Link link = new Link(rd, remote, weight);
+                link.session = session;
+                if (ports.add(link) != -1) return link;
+
+                //the neighbor connected to us, or every port was taken, while we were waiting for the answer
+                System.err.println(ports.get(simulatedIP) != null
+                        ? "You are already attached to this router!" : "No more ports available!");
+                session.close();
+            } else {
+                System.err.println(incoming == null ? "No answer from the remote router" : incoming);
+                session.close();
             }
 
         } catch (UnknownHostException e) {
@@ -293,40 +908,20 @@ public class Router {
         } catch (IllegalArgumentException e) {
             System.err.println("The port parameter is outside the specified range of valid port values, which is between 0 and 65535, inclusive");
         }
+        return null;
     }
 
-    //creates the link between host router and remote router
-    private boolean requestLinkDeletion(String processIP, short processPort, String simulatedIP) {
+    //asks the remote router on the link to delete it and waits for the confirmation
+    private boolean requestLinkDeletion(Link link) {
 
-        // attempt to connect with desired router
+        // attempt to reach the desired router
         try {
 
-            Socket clientSocket = new Socket(processIP, processPort);
-
-            ObjectOutputStream output = new ObjectOutputStream(clientSocket.getOutputStream());
-            ObjectInputStream input = new ObjectInputStream(clientSocket.getInputStream());
-
             //create packet that contains the deletion request header
-            SOSPFPacket request = constructPacket(simulatedIP, null, (short) 3);
-
-            //send the deletion request to the remote router
-            output.writeObject(request);
-
-            try {
-                SOSPFPacket incoming = (SOSPFPacket) input.readObject();
-                if (incoming.sospfType == 3) {
+            SOSPFPacket request = constructPacket(link.router2.simulatedIPAddress, null, (short) 3);
 
-                    cleanUp(output, input, clientSocket);
-                    return true;
-
-                } else {
-                    return false;
-                }
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException(e);
-            } catch (NullPointerException e) {
-                throw new RuntimeException(e);
-            }
+            //send the deletion request to the remote router and wait for it to confirm
+            return sessionFor(link).request(request, 3, REQUEST_TIMEOUT_MS) != null;
 
         } catch (UnknownHostException e) {
             System.err.println("Don't know about host ");
@@ -348,11 +943,23 @@ public class Router {
      * format: source ip address  -> ip address -> ... -> destination ip
      *
      * @param destinationIP the ip address of the destination simulated router
+     * @param all           output every equal-cost path, and the next hops they start with, instead of just one
      */
-    private void processDetect(String destinationIP) {
+    private void processDetect(String destinationIP, boolean all) {
+        RoutingTable routingTable = this.lsd.getRoutingTable();
+
+        //the routing table is kept up to date on every LSA install, so this is only a walk along the path
+        if (!all) {
+            System.out.println(routingTable.getShortestPath(destinationIP));
+            return;
+        }
 
-        String path = this.lsd.getShortestPath(destinationIP);
-        System.out.println(path);
+        //every equal-cost path, and the neighbors the traffic can be spread over
+        System.out.println(routingTable.getAllShortestPaths(destinationIP));
+        List<String> nextHops = routingTable.getNextHops(destinationIP);
+        if (!nextHops.isEmpty()) {
+            System.out.println("next hops: " + nextHops);
+        }
     }
 
     /**
@@ -364,16 +971,20 @@ public class Router {
   private void processDisconnect(short portNumber) {
 
       //check to make sure the port number is valid, that it is not null, and that there actually exists a two-way link
-      if (portNumber > 3 || portNumber < 0 || ports[portNumber] == null || ports[portNumber].router2.status != RouterStatus.TWO_WAY) {
+      Link link = ports.get(portNumber);
+      if (link == null || link.router2.status != RouterStatus.TWO_WAY) {
           System.err.println("Invalid port error.");
           return;
       }
 
-      RouterDescription rd = ports[portNumber].router2;
-
       //get in touch with this router so you can send link deletion request
-      if (requestLinkDeletion(rd.processIPAddress, rd.processPortNumber, rd.simulatedIPAddress)) {
-          ports[portNumber] = null;
+      if (requestLinkDeletion(link)) {
+          ports.remove(link);
+
+          //the neighbor is gone from our ports, so is any reason to keep talking to it
+          if (link.session != null) {
+              link.session.close();
+          }
 
           try {
               broadcastUpdate(null, null);
@@ -393,7 +1004,7 @@ public class Router {
    * NOTE: this command should not trigger link database synchronization
    * @throws IOException
    */
-  private void processAttach(String processIP, short processPort, String simulatedIP, short weight) throws IOException {
+  public void processAttach(String processIP, short processPort, String simulatedIP, short weight) throws IOException {
 
       // setup RouterDescription for the desired router
       RouterDescription remote = new RouterDescription(processIP, processPort, simulatedIP);
@@ -405,141 +1016,46 @@ public class Router {
       }
 
       //check to make sure isn't already attached to requested remote router
-      for (int x = 0; x < 4; x++) {
-          if (ports[x] != null && ports[x].router2.simulatedIPAddress.equals(simulatedIP)) {
-              System.err.println("You are already attached to this router!");
-              return;
-          }
+      if (ports.get(simulatedIP) != null) {
+          System.err.println("You are already attached to this router!");
+          return;
       }
 
-      // find first available port
-      int free = freePort();
-
       //this means there are no available ports on the current router, return the appropriate message
-      if (free == -1) {
+      if (ports.isFull()) {
           System.err.println("No more ports available!");
           return;
       }
 
-      createAttachment(processIP, processPort, simulatedIP, weight, remote, free);
+      createAttachment(processIP, processPort, simulatedIP, weight, remote);
   }
 
 
     /**
    * broadcast Hello to neighbors
    */
-  private void processStart() {
+  public void processStart() {
       //Make sure that current router is attached to at least one other router
-      if (isEmpty(ports)) {
+      if (ports.isEmpty()) {
           System.err.println("You have started, but aren't connected to any routers.");
       }
 
       hasStarted = true;
 
-      Socket clientSocket = null;
-      ObjectOutputStream output = null;
-      ObjectInputStream input = null;
-
-      //Attempt to send a message to every port that current router is attached to
-      for (int i = 0; i < ports.length; i++) {
-
-          //if port is not being used, continue the loop
-          if (ports[i] == null) continue;
-
-          // Initialization section:
-          // Try to open a socket on the given port
-          // Try to open input and output streams
-          String hostname = ports[i].router2.processIPAddress;
-          short port = ports[i].router2.processPortNumber;
-
-          try {
-              clientSocket = new Socket(hostname, port);
-              output = new ObjectOutputStream(clientSocket.getOutputStream());
-              input = new ObjectInputStream(clientSocket.getInputStream());
-          } catch (UnknownHostException e) {
-              System.err.println("Don't know about host: " + hostname);
-          } catch (IOException e) {
-              System.err.println("Couldn't get I/O for the connection to: " + hostname);
-          }
-
-          // If everything has been initialized then we want to send a packet
-          // to the socket we have opened a connection to on the given port
-          try {
-              SOSPFPacket packet = constructPacket(ports[i].router2.simulatedIPAddress, null, (short) 0);
-
-              //broadcast the HELLO packet
-              try {
-                  output.writeObject(packet);
-              } catch (NullPointerException e) {
-                  cleanUp(output, input, clientSocket);
-                  System.err.println("Trying to send a null packet!");
-                  return;
-              }
-
-              //wait for response
-              Object incoming_unk;
-
-              try {
-                  incoming_unk = input.readObject();
-              } catch (ClassNotFoundException e) {
-                  cleanUp(output, input, clientSocket);
-                  System.err.println("Corrupted packet");
-                  return;
-              } catch (NullPointerException e) {
-                  cleanUp(output, input, clientSocket);
-                  System.err.println("Null packet");
-                  return;
-              }
-
-              SOSPFPacket incoming;
-
-              // this should only happen if receiving "Ports are full error". Use case ends
-              if (incoming_unk instanceof String) {
-                  String temp = (String) incoming_unk;
-
-                  //need to delete current link from ports since it is impossible to have future conversation with this router
-                  ports[i] = null;
+      //Attempt to send a HELLO to every port that current router is attached to
+      for (Link link : ports.links()) {
 
-                  System.out.println(temp + " Deleting link reference from port. Maybe try to attach again later.");
-                  cleanUp(output, input, clientSocket);
-                  continue;
-
-                  //otherwise the HELLO packet was processed successfully
-              } else {
-                  incoming = (SOSPFPacket) incoming_unk;
-              }
-
-              //check to make sure the packet received was a HELLO
-              if (incoming == null || incoming.sospfType != 0) {
-                  System.out.println("Error: did not receive a HELLO back!");
-
-                  // clean up
-                  cleanUp(output, input, clientSocket);
-                  return;
-              }
-
-              System.out.println("received HELLO from " + incoming.srcIP + ";");
-
-              ports[i].router1.status = RouterStatus.TWO_WAY;
-              ports[i].router2.status = RouterStatus.TWO_WAY;
-
-              System.out.println("set " + incoming.srcIP + " state to TWO_WAY");
-
-              //send back the HELLO packet
-              output.writeObject(packet);
-
-              //broadcast LSAUPDATE to neighbors
-              broadcastUpdate(null, null);
+          //if port is already fully up, continue the loop
+          if (link.router2.status == RouterStatus.TWO_WAY) continue;
 
-              // clean up
-              cleanUp(output, input, clientSocket);
+          //wait for the neighbor's HELLO, the rest of the handshake happens as its packets arrive
+          link.router1.status = RouterStatus.INIT;
+          link.router2.status = RouterStatus.INIT;
 
+          SOSPFPacket packet = constructPacket(link.router2.simulatedIPAddress, null, (short) 0);
 
-          } catch (UnknownHostException e) {
-              System.err.println("Trying to connect to unknown host: " + e);
-          } catch (IOException e) {
-              System.err.println("IOException:  " + e);
-          }
+          //broadcast the HELLO packet
+          sendAsync(link, packet);
       }
   }
 
@@ -562,126 +1078,34 @@ public class Router {
           }
 
           //check to make sure isn't already connected to requested remote router
-          for (int x = 0; x < 4; x++) {
-              if (ports[x] != null && ports[x].router2.simulatedIPAddress.equals(simulatedIP)) {
-                  System.err.println("You are already connected to this router!");
-                  return;
-              }
+          if (ports.get(simulatedIP) != null) {
+              System.err.println("You are already connected to this router!");
+              return;
           }
 
           // setup RouterDescription for the desired router
           RouterDescription remote = new RouterDescription(processIP, processPort, simulatedIP);
 
-          // find first available port
-          int free = freePort();
-
           //this means there are no available ports on the current router, return the appropriate message
-          if (free == -1) {
+          if (ports.isFull()) {
               System.err.println("No more ports available!");
               return;
           }
 
           // attempt to connect with desired router
-          createAttachment(processIP, processPort, simulatedIP, weight, remote, free);
-
-          //Basically do start except with the messaging back and forth
-          Socket clientSocket = null;
-          ObjectOutputStream output = null;
-          ObjectInputStream input = null;
-
-
-          // Initialization section:
-          // Try to open a socket on the given port
-          // Try to open input and output streams
-          String hostname = ports[free].router2.processIPAddress;
-          short port = ports[free].router2.processPortNumber;
-
-          try {
-              clientSocket = new Socket(hostname, port);
-              output = new ObjectOutputStream(clientSocket.getOutputStream());
-              input = new ObjectInputStream(clientSocket.getInputStream());
-          } catch (UnknownHostException e) {
-              System.err.println("Don't know about host: " + hostname);
-          } catch (IOException e) {
-              System.err.println("Couldn't get I/O for the connection to: " + hostname);
-          }
-
-          // If everything has been initialized then we want to send a packet
-          // to the socket we have opened a connection to on the given port
-          try {
-              SOSPFPacket packet = constructPacket(ports[free].router2.simulatedIPAddress, null, (short) 2);
-
-              //broadcast the HELLO packet
-              try {
-                  output.writeObject(packet);
-              } catch (NullPointerException e) {
-                  cleanUp(output, input, clientSocket);
-                  System.err.println("Trying to send a null packet!");
-                  return;
-              }
-
-              //wait for response
-              Object incoming_unk;
-
-              try {
-                  incoming_unk = input.readObject();
-              } catch (ClassNotFoundException e) {
-                  cleanUp(output, input, clientSocket);
-                  System.err.println("Corrupted packet");
-                  return;
-              } catch (NullPointerException e) {
-                  cleanUp(output, input, clientSocket);
-                  System.err.println("Null packet");
-                  return;
-              }
-
-              SOSPFPacket incoming;
-
-              // this should only happen if receiving "Ports are full error". Use case ends
-              if (incoming_unk instanceof String) {
-                  String temp = (String) incoming_unk;
-
-                  //need to delete current link from ports since it is impossible to have future conversation with this router
-                  ports[free] = null;
-
-                  System.out.println(temp + " Deleting link reference from port. Maybe try to connect again later.");
-                  cleanUp(output, input, clientSocket);
-                  return;
+          Link link = createAttachment(processIP, processPort, simulatedIP, weight, remote);
 
-                  //otherwise the HELLO packet was processed successfully
-              } else {
-                  incoming = (SOSPFPacket) incoming_unk;
-              }
-
-              //check to make sure the packet received was a HELLO
-              if (incoming == null || incoming.sospfType != 2) {
-                  System.out.println("Error: did not receive a CONNECT back!");
-
-                  // clean up
-                  cleanUp(output, input, clientSocket);
-                  return;
-              }
-
-
-              ports[free].router1.status = RouterStatus.TWO_WAY;
-              ports[free].router2.status = RouterStatus.TWO_WAY;
+          //the remote router refused or could not be reached
+          if (link == null) return;
 
+          //Basically do start except the handshake uses CONNECT packets
+          link.router1.status = RouterStatus.INIT;
+          link.router2.status = RouterStatus.INIT;
 
-              //send back the HELLO packet
-              output.writeObject(packet);
+          SOSPFPacket packet = constructPacket(link.router2.simulatedIPAddress, null, (short) 2);
 
-              //broadcast LSAUPDATE to neighbors
-              broadcastUpdate(null, null);
-
-              // clean up
-              cleanUp(output, input, clientSocket);
-
-
-          } catch (UnknownHostException e) {
-              System.err.println("Trying to connect to unknown host: " + e);
-          } catch (IOException e) {
-              System.err.println("IOException:  " + e);
-          }
+          //broadcast the CONNECT packet, the neighbor's answer completes the handshake
+          sendAsync(link, packet);
 
       } else {
           System.err.println("You must run start command before attempting to connect!");
@@ -694,15 +1118,16 @@ public class Router {
    */
   private void processNeighbors() {
       boolean attached = true;
-      if (isEmpty(ports)) {
+      if (ports.isEmpty()) {
           System.err.println("Ports are empty. No neighbors.");
       } else {
-          for (int i = 0; i < ports.length; i++) {
-              if (ports[i] != null && ports[i].router2.status != null) {
+          for (Link link : ports.links()) {
+              if (link.router2.status != null) {
                   attached = false;
-                  System.out.println("IP address of neighbor " + (i + 1) + ": " + ports[i].router2.simulatedIPAddress);
+                  int port = ports.portOf(link.router2.simulatedIPAddress);
+                  System.out.println("IP address of neighbor " + (port + 1) + ": " + link.router2.simulatedIPAddress);
                   //System.out.println(ports[i].router2.simulatedIPAddress);
-                  System.out.println("Weight: " + ports[i].weight);
+                  System.out.println("Weight: " + link.weight);
               }
           }
           if (attached) {
@@ -711,6 +1136,64 @@ public class Router {
       }
   }
 
+    /**
+     * output how long changes of other routers took to reach this one and to be routed around. The times are measured
+     * against the originator's clock, so they are only as accurate as the routers' clocks are in sync.
+     */
+    private void processConvergence() {
+        System.out.println("propagation delay: " + propagationDelay);
+        System.out.println("hop count:         " + hopCount);
+        System.out.println("time to SPF:       " + lsd.convergenceDelay);
+    }
+
+    /**
+     * advertise the address prefix as reachable through this router, e.g. 192.168.4.0/24
+     * <p/>
+     * NOTE: once started, this floods a new LSA
+     */
+    private void processAdvertise(String prefix) throws IOException {
+        String normalized;
+        try {
+            normalized = IPv4.formatPrefix(IPv4.prefixAddress(prefix), IPv4.prefixLength(prefix));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        if (!prefixes.add(normalized)) {
+            System.out.println(normalized + " is already advertised");
+            return;
+        }
+        System.out.println("advertising " + normalized);
+
+        //before start the prefix goes out with our first LSA
+        if (hasStarted) {
+            broadcastUpdate(null, null);
+        }
+    }
+
+    /**
+     * send the payload to the router with the given simulated ip, forwarded hop by hop
+     *
+     * @param destinationIP the ip address of the destination simulated router
+     */
+    private void processSend(String destinationIP, String payload) {
+        try {
+            if (!send(destinationIP, payload)) {
+                System.err.println("No route to " + destinationIP);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * output every metric of this router
+     */
+    private void processStats() {
+        System.out.print(metrics);
+    }
+
     /**
      * disconnect with all neighbors and quit the program
      */
@@ -723,12 +1206,12 @@ public class Router {
         }
 
         //if you are connected to remote routers, then you need to disconnect from each one before exiting
-        for (int i = 0; i < 4; i++) {
+        for (Link link : ports.links()) {
 
-            //you can skip any null or non-started ports
-            if (ports[i] == null || ports[i].router2.status != RouterStatus.TWO_WAY) continue;
+            //you can skip any non-started ports
+            if (link.router2.status != RouterStatus.TWO_WAY) continue;
 
-            processDisconnect((short) i);
+            processDisconnect((short) ports.portOf(link.router2.simulatedIPAddress));
 
         }
 
@@ -747,7 +1230,7 @@ public class Router {
       while (true) {
         if (command.startsWith("detect ")) {
           String[] cmdLine = command.split(" ");
-          processDetect(cmdLine[1]);
+          processDetect(cmdLine[1], cmdLine.length > 2 && cmdLine[2].equals("all"));
         } else if (command.startsWith("disconnect ")) {
           String[] cmdLine = command.split(" ");
           processDisconnect(Short.parseShort(cmdLine[1]));
@@ -767,6 +1250,16 @@ public class Router {
         } else if (command.equals("neighbors")) {
           //output neighbors
           processNeighbors();
+        } else if (command.equals("convergence")) {
+          processConvergence();
+        } else if (command.equals("stats")) {
+          processStats();
+        } else if (command.startsWith("advertise ")) {
+          String[] cmdLine = command.split(" ");
+          processAdvertise(cmdLine[1]);
+        } else if (command.startsWith("send ")) {
+          String[] cmdLine = command.split(" ", 3);
+          processSend(cmdLine[1], cmdLine.length > 2 ? cmdLine[2] : "");
         } else {
             System.out.print(">> ");
             command = br.readLine();
@@ -0,0 +1,86 @@
+package socs.network.node;
+
+import java.util.Arrays;
+
+/**
+ * Interns simulated IPs into dense int ids, so the SPF and everything built on it can keep per-router state in
+ * primitive arrays. Ids are handed out in order of first appearance and never change or get reused, which keeps
+ * them valid across database versions. A table is immutable; {@link #with} returns a new one when routers are added,
+ * so readers of an older snapshot can keep looking names up while newer ones are built.
+ */
+class RouterIds {
+
+    static final RouterIds EMPTY = new RouterIds(new String[0], new int[2]);
+
+    //id => simulated IP
+    private final String[] names;
+    //open addressing table of id + 1, 0 marks an empty slot; its length is a power of two, at least twice the ids
+    private final int[] slots;
+
+    private RouterIds(String[] names, int[] slots) {
+        this.names = names;
+        this.slots = slots;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    //returns the simulated IP the id was handed out for
+    String name(int id) {
+        return names[id];
+    }
+
+    //returns the id of the simulated IP, or -1 if it was never interned
+    int indexOf(String simulatedIP) {
+        int mask = slots.length - 1;
+        for (int slot = hash(simulatedIP) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (names[slots[slot] - 1].equals(simulatedIP)) return slots[slot] - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * returns a table that also holds every given simulated IP, or this one if it already did
+     */
+    RouterIds with(Iterable<String> simulatedIPs) {
+        String[] grown = null;
+        int size = names.length;
+
+        for (String ip : simulatedIPs) {
+            if (indexOf(ip) >= 0) continue;
+
+            if (grown == null) {
+                grown = Arrays.copyOf(names, Math.max(4, names.length * 2));
+            } else if (size == grown.length) {
+                grown = Arrays.copyOf(grown, size * 2);
+            }
+            grown[size++] = ip;
+        }
+        if (grown == null) return this;
+
+        //the new names may repeat among themselves, so place them through the new table itself
+        int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) * 2;
+        int[] table = new int[capacity];
+        String[] dense = new String[size];
+        int count = 0;
+
+        for (int i = 0; i < size; i++) {
+            int mask = capacity - 1;
+            int slot = hash(grown[i]) & mask;
+            while (table[slot] != 0 && !dense[table[slot] - 1].equals(grown[i])) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] != 0) continue;
+
+            dense[count] = grown[i];
+            table[slot] = ++count;
+        }
+        return new RouterIds(count == size ? dense : Arrays.copyOf(dense, count), table);
+    }
+
+    private static int hash(String simulatedIP) {
+        int h = simulatedIP.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
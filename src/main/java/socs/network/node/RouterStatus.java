@@ -8,4 +8,6 @@ package socs.network.node;
 public enum RouterStatus {
   INIT,
   TWO_WAY,
+  //the neighbor stopped answering; it comes back through a new HELLO
+  DOWN,
 }
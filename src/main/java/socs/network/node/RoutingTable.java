@@ -0,0 +1,293 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Routing table derived from one {@link ShortestPathTree}: for every destination it holds the total cost, the
+ * predecessor on the shortest path and the next hop out of this router. Tables are immutable; the link state
+ * database builds a new one whenever an LSA is installed, so lookups never run Dijkstra and only ever walk the
+ * path to the destination.
+ * <p/>
+ * Besides the single path of the tree, the table knows every equal-cost path: the set of neighbors that start one
+ * of them is the destination's next-hop set, worked out for all destinations at once the first time it is needed.
+ */
+class RoutingTable {
+
+    //most equal-cost paths listed for one destination, there can be exponentially many
+    static final int MAX_PATHS = 16;
+
+    final ShortestPathTree tree;
+
+    //next-hop sets of every destination, built on first use
+    private volatile NextHops nextHops = null;
+
+    RoutingTable(ShortestPathTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * returns the total cost to the destination, or -1 if it is unreachable
+     */
+    int getCost(String destinationIP) {
+        int v = tree.index.indexOf(destinationIP);
+        return v < 0 || !tree.isReachable(v) ? -1 : tree.distance[v];
+    }
+
+    /**
+     * returns the simulated IP of the neighbor to forward to for the destination, or null if there is none
+     */
+    String getNextHop(String destinationIP) {
+        int v = tree.index.indexOf(destinationIP);
+        if (v < 0 || tree.predecessor[v] == -1) return null;
+
+        //walk back towards the root, the last router before it is the next hop
+        while (tree.predecessor[v] != tree.root) {
+            v = tree.predecessor[v];
+        }
+        return tree.index.nodes[v].linkStateID;
+    }
+
+    /**
+     * returns the simulated IP of the router before the destination on its shortest path, or null if there is none
+     */
+    String getPredecessor(String destinationIP) {
+        int v = tree.index.indexOf(destinationIP);
+        return v < 0 || tree.predecessor[v] == -1 ? null : tree.index.nodes[tree.predecessor[v]].linkStateID;
+    }
+
+    /**
+     * output the shortest path from the root to the destination with the given IP address
+     */
+    String getShortestPath(String destinationIP) {
+
+        LinkedList<LSA> path = getPath(tree.index.indexOf(destinationIP));
+
+        if (path == null || path.size() == 0) {
+            return "Path does not exist";
+        }
+
+        return pathToString(path);
+    }
+
+    /**
+     * returns the simulated IPs of every neighbor that starts a shortest path to the destination, in the order of
+     * our links, or an empty list if it is unreachable
+     */
+    List<String> getNextHops(String destinationIP) {
+        List<String> hops = new ArrayList<String>();
+        int v = tree.index.indexOf(destinationIP);
+        if (v < 0 || tree.predecessor[v] == -1) return hops;
+
+        for (int neighbor : nextHops().of(v)) {
+            hops.add(tree.index.nodes[neighbor].linkStateID);
+        }
+        return hops;
+    }
+
+    /**
+     * output every shortest path from the root to the destination with the given IP address, one per line, up to
+     * MAX_PATHS of them
+     */
+    String getAllShortestPaths(String destinationIP) {
+        int target = tree.index.indexOf(destinationIP);
+        if (target < 0 || tree.predecessor[target] == -1) {
+            return "Path does not exist";
+        }
+
+        List<LinkedList<LSA>> paths = new ArrayList<LinkedList<LSA>>();
+        boolean truncated = collectPaths(target, new LinkedList<LSA>(), paths);
+
+        StringBuilder output = new StringBuilder();
+        for (LinkedList<LSA> path : paths) {
+            if (output.length() > 0) output.append("\n");
+            output.append(pathToString(path));
+        }
+        if (truncated) {
+            output.append("\n... more than ").append(MAX_PATHS).append(" equal-cost paths, the rest are not shown");
+        }
+        return output.toString();
+    }
+
+    //adds every path from the root to v, each followed by the suffix, and returns true if it had to stop at MAX_PATHS
+    private boolean collectPaths(int v, LinkedList<LSA> suffix, List<LinkedList<LSA>> paths) {
+        suffix.addFirst(tree.index.nodes[v]);
+        try {
+            if (v == tree.root) {
+                if (paths.size() == MAX_PATHS) return true;
+                paths.add(new LinkedList<LSA>(suffix));
+                return false;
+            }
+
+            for (int u : tree.predecessors(v)) {
+                if (collectPaths(u, suffix, paths)) return true;
+            }
+            return false;
+        } finally {
+            suffix.removeFirst();
+        }
+    }
+
+    NextHops nextHops() {
+        NextHops hops = nextHops;
+        if (hops == null) {
+            //two threads may both build it, they come up with the same sets
+            hops = new NextHops(tree);
+            nextHops = hops;
+        }
+        return hops;
+    }
+
+    /*
+     * This method returns the path from the source to the selected target and
+     * NULL if no path exists
+     */
+    @org.jetbrains.annotations.Nullable
+    private LinkedList<LSA> getPath(int target) {
+
+        // check if a path exists
+        if (target < 0 || tree.predecessor[target] == -1) {
+            return null;
+        }
+
+        LinkedList<LSA> path = new LinkedList<LSA>();
+
+        // walk back from the target, adding to the front so the path ends up in the correct order
+        for (int step = target; step != -1; step = tree.predecessor[step]) {
+            path.addFirst(tree.index.nodes[step]);
+        }
+
+        return path;
+    }
+
+    private String pathToString(LinkedList<LSA> path) {
+        //process the path to get the proper output
+        String output = "";
+
+        ListIterator<LSA> listIterator = path.listIterator();
+
+        while (listIterator.hasNext()) {
+            LSA current = listIterator.next();
+
+            String ip = current.linkStateID;
+
+
+            if (listIterator.hasNext()) {
+                String arrow = " -> ";
+
+                String neighbor = listIterator.next().linkStateID;
+                listIterator.previous();
+
+                int weight = -1;
+
+                for (LinkDescription ld : current.links) {
+                    if (ld.linkID.equals(neighbor)) {
+                        weight = ld.tosMetrics;
+                    }
+                }
+
+                String w = " (" + weight + ") ";
+
+                output = output + ip + " " + arrow + w;
+            } else {
+                output = output + " " + ip;
+            }
+        }
+
+        return output;
+    }
+
+    /**
+     * The next-hop set of every destination, as a bitmap over the root's neighbors: bit i of the words of v is set
+     * if neighbor i starts a shortest path to v. Routers are visited in order of distance, so the sets of all their
+     * equal-cost predecessors are complete by then, and a router's set is the union of theirs.
+     */
+    static class NextHops {
+
+        //neighbor ids of the root, bit i stands for neighbors[i]
+        final int[] neighbors;
+        private final int words;
+        //words longs per router
+        private final long[] sets;
+
+        NextHops(ShortestPathTree tree) {
+            int n = tree.index.size();
+            int root = tree.root;
+
+            //the distinct routers the root links to
+            int[] bit = new int[n];
+            Arrays.fill(bit, -1);
+            int[] found = new int[0];
+            int count = 0;
+            if (root >= 0) {
+                found = new int[tree.index.offsets[root + 1] - tree.index.offsets[root]];
+                for (int k = tree.index.offsets[root]; k < tree.index.offsets[root + 1]; k++) {
+                    int neighbor = tree.index.targets[k];
+                    if (bit[neighbor] == -1) {
+                        bit[neighbor] = count;
+                        found[count++] = neighbor;
+                    }
+                }
+            }
+            neighbors = Arrays.copyOf(found, count);
+            words = Math.max(1, (count + 63) / 64);
+            sets = new long[n * words];
+
+            //reachable routers by distance, each key holding the distance above the id
+            long[] order = new long[n];
+            int reachable = 0;
+            for (int v = 0; v < n; v++) {
+                if (v != root && tree.isReachable(v)) {
+                    order[reachable++] = ((long) tree.distance[v] << 32) | v;
+                }
+            }
+            Arrays.sort(order, 0, reachable);
+
+            for (int i = 0; i < reachable; i++) {
+                int v = (int) order[i];
+                for (int u : tree.predecessors(v)) {
+                    if (u == root) {
+                        if (bit[v] >= 0) sets[v * words + bit[v] / 64] |= 1L << (bit[v] % 64);
+                    } else {
+                        for (int w = 0; w < words; w++) {
+                            sets[v * words + w] |= sets[u * words + w];
+                        }
+                    }
+                }
+
+                //a predecessor at the same distance, over a link that costs nothing, may come later in the order;
+                //the tree path still gives one next hop
+                if (isEmpty(v)) {
+                    int first = v;
+                    while (tree.predecessor[first] != root) first = tree.predecessor[first];
+                    sets[v * words + bit[first] / 64] |= 1L << (bit[first] % 64);
+                }
+            }
+        }
+
+        private boolean isEmpty(int v) {
+            for (int w = 0; w < words; w++) {
+                if (sets[v * words + w] != 0) return false;
+            }
+            return true;
+        }
+
+        /**
+         * returns the ids of the neighbors that start a shortest path to v
+         */
+        int[] of(int v) {
+            int[] hops = new int[neighbors.length];
+            int count = 0;
+            for (int i = 0; i < neighbors.length; i++) {
+                if ((sets[v * words + i / 64] & (1L << (i % 64))) != 0) hops[count++] = neighbors[i];
+            }
+            return Arrays.copyOf(hops, count);
+        }
+    }
+}
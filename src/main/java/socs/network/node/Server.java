@@ -22,9 +22,9 @@ public class Server implements Runnable {
                 // the server socket will listen to this port indefinitely
                 Socket listener = socket.accept();
 
-                // when an incoming request comes through, create a thread to handle the request
-                Thread client = new Thread(new ClientHandler(listener, router));
-                client.start();
+                // each accepted connection is a session with a neighbor, hand it to the router's executor to handle
+                // everything it sends
+                router.executor.execute(new SocketSession(listener, router.codec).reader(router));
 
             }
         } catch (IOException ex) {
@@ -0,0 +1,104 @@
+package socs.network.node;
+
+import socs.network.message.SOSPFPacket;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Long-lived connection to one neighbor. Every packet type flows over the same session in both directions, and a
+ * caller can send a request and wait for the matching reply while other packets keep being dispatched. Only one
+ * request can wait for its reply at a time, since replies carry nothing to match them to a request by. How incoming
+ * messages get read is up to each implementation, which hands them to its {@link ClientHandler}.
+ */
+public abstract class Session {
+
+    //reply type for the plain String answers of the attach exchange
+    static final int STRING_REPLY = -1;
+
+    private CompletableFuture<Object> pendingReply = null;
+    private int awaitedType;
+
+    //counts every frame once a router handles this session, and the neighbor it has been bound to
+    volatile Traffic traffic = null;
+    volatile String neighbor = null;
+
+    /**
+     * sends one message to the neighbor
+     */
+    abstract void send(Object message) throws IOException;
+
+    abstract void close();
+
+    //called by the implementations with every frame they encode
+    void sent(Object message, int bytes) {
+        Traffic traffic = this.traffic;
+        if (traffic != null) traffic.sent(this, message, bytes);
+    }
+
+    //called by the implementations with every frame they decode
+    void received(Object message, int bytes) {
+        Traffic traffic = this.traffic;
+        if (traffic != null) traffic.received(this, message, bytes);
+    }
+
+    abstract boolean isOpen();
+
+    /**
+     * sends a request and waits for the reply of the given type
+     *
+     * @return the reply, or null if none came back before the timeout
+     * @throws IOException if another request on this session is still waiting for its reply
+     */
+    Object request(Object message, int replyType, long timeoutMillis) throws IOException {
+        CompletableFuture<Object> reply = new CompletableFuture<Object>();
+        synchronized (this) {
+            //a second request would take over the first one's reply
+            if (pendingReply != null) {
+                throw new IOException("A request is already pending on this session");
+            }
+            pendingReply = reply;
+            awaitedType = replyType;
+        }
+
+        try {
+            send(message);
+            return reply.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            synchronized (this) {
+                if (pendingReply == reply) pendingReply = null;
+            }
+        }
+    }
+
+    /**
+     * hands an incoming message to a waiting request if it is the reply that request expects
+     *
+     * @return true if the message was consumed as a reply and must not be dispatched
+     */
+    boolean offerReply(Object message) {
+        CompletableFuture<Object> reply;
+        synchronized (this) {
+            reply = pendingReply;
+            if (reply == null) return false;
+
+            boolean matches = awaitedType == STRING_REPLY ? message instanceof String
+                    : message instanceof SOSPFPacket && ((SOSPFPacket) message).sospfType == awaitedType;
+            if (!matches) return false;
+
+            pendingReply = null;
+        }
+        reply.complete(message);
+        return true;
+    }
+}
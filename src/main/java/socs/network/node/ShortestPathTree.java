@@ -0,0 +1,224 @@
+package socs.network.node;
+
+import java.util.Arrays;
+
+/**
+ * Shortest path tree rooted at one router, computed with Dijkstra's algorithm over an {@link AdjacencyIndex}.
+ * Tentative routers are kept in an {@link IndexedMinHeap}, so each step is O(log V) instead of a scan of the
+ * whole tentative set, and every edge is relaxed exactly once.
+ * <p/>
+ * Only one predecessor is kept per router; {@link #predecessors} finds the equal-cost alternatives from the in-links
+ * when they are needed.
+ * <p/>
+ * When only one router's LSA changes, {@link #repair} derives the tree of the new database version from the old
+ * one instead of starting over: only the subtrees hanging off links that got worse are recomputed, and only
+ * routers that actually get closer are touched.
+ */
+class ShortestPathTree {
+
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    final AdjacencyIndex index;
+    final int root;
+
+    //distance[v] is the cost of the shortest path from the root to v
+    final int[] distance;
+    //predecessor[v] is the router before v on that path, or -1 for the root and unreachable routers
+    final int[] predecessor;
+
+    ShortestPathTree(AdjacencyIndex index, int root) {
+        this.index = index;
+        this.root = root;
+
+        int n = index.size();
+        distance = new int[n];
+        predecessor = new int[n];
+        Arrays.fill(distance, UNREACHABLE);
+        Arrays.fill(predecessor, -1);
+
+        if (root < 0) return;
+
+        IndexedMinHeap tentative = new IndexedMinHeap(n);
+        distance[root] = 0;
+        tentative.insertOrDecrease(root, 0);
+
+        int[] offsets = index.offsets;
+        int[] targets = index.targets;
+        int[] weights = index.weights;
+
+        //while there are remaining unevaluated nodes, confirm the closest one and expand its neighbors
+        while (!tentative.isEmpty()) {
+            int node = tentative.poll();
+
+            for (int k = offsets[node]; k < offsets[node + 1]; k++) {
+                int target = targets[k];
+                int candidate = distance[node] + weights[k];
+
+                if (candidate < distance[target]) {
+                    distance[target] = candidate;
+                    predecessor[target] = node;
+                    tentative.insertOrDecrease(target, candidate);
+                }
+            }
+        }
+    }
+
+    private ShortestPathTree(AdjacencyIndex index, int root, int[] distance, int[] predecessor) {
+        this.index = index;
+        this.root = root;
+        this.distance = distance;
+        this.predecessor = predecessor;
+    }
+
+    /**
+     * Repairs the tree after the links of router u changed, in the style of Ramalingam and Reps: routers whose tree
+     * path used a link of u that got more expensive or disappeared are invalidated, reseeded from their in-links
+     * that are still valid, and then Dijkstra runs only from the routers whose distance changed.
+     *
+     * @param previous tree of the previous database version
+     * @param index    index of the new version, with the same routers as the previous one
+     * @param u        index of the router whose links changed
+     * @param maxAffected largest number of invalidated routers worth repairing
+     * @return the repaired tree, or null if the change is too large and a full run is cheaper
+     */
+    static ShortestPathTree repair(ShortestPathTree previous, AdjacencyIndex index, int u, int maxAffected) {
+        int[] distance = previous.distance.clone();
+        int[] predecessor = previous.predecessor.clone();
+        ShortestPathTree tree = new ShortestPathTree(index, previous.root, distance, predecessor);
+
+        //links out of an unreachable router cannot be on any path, before or after the change
+        if (!tree.isReachable(u)) return tree;
+
+        //invalidate every subtree hanging off a link of u that is now worse than the tree edge it replaced
+        boolean[] affected = new boolean[index.size()];
+        int[] invalidated = new int[index.size()];
+        int affectedCount = 0;
+
+        for (int j = previous.index.offsets[u]; j < previous.index.offsets[u + 1]; j++) {
+            int child = previous.index.targets[j];
+            if (predecessor[child] != u || affected[child]) continue;
+
+            int weight = cheapestLink(index, u, child);
+            if (weight != UNREACHABLE && distance[u] + weight <= distance[child]) continue;
+
+            //the invalidated list doubles as the work queue of the subtree walk
+            int walked = affectedCount;
+            affected[child] = true;
+            invalidated[affectedCount++] = child;
+
+            while (walked < affectedCount) {
+                int v = invalidated[walked++];
+                if (affectedCount > maxAffected) return null;
+
+                for (int k = index.offsets[v]; k < index.offsets[v + 1]; k++) {
+                    int next = index.targets[k];
+                    if (!affected[next] && predecessor[next] == v) {
+                        affected[next] = true;
+                        invalidated[affectedCount++] = next;
+                    }
+                }
+            }
+        }
+        if (affectedCount > maxAffected) return null;
+
+        for (int i = 0; i < affectedCount; i++) {
+            distance[invalidated[i]] = UNREACHABLE;
+            predecessor[invalidated[i]] = -1;
+        }
+
+        IndexedMinHeap tentative = new IndexedMinHeap(index.size());
+
+        //reseed the invalidated routers from their best in-link that does not come from another invalidated one
+        for (int i = 0; i < affectedCount; i++) {
+            int v = invalidated[i];
+
+            for (int k = index.sourceOffsets[v]; k < index.sourceOffsets[v + 1]; k++) {
+                int p = index.sources[k];
+                if (affected[p] || !tree.isReachable(p)) continue;
+
+                int candidate = distance[p] + index.sourceWeights[k];
+                if (candidate < distance[v]) {
+                    distance[v] = candidate;
+                    predecessor[v] = p;
+                }
+            }
+            if (tree.isReachable(v)) tentative.insertOrDecrease(v, distance[v]);
+        }
+
+        int[] offsets = index.offsets;
+        int[] targets = index.targets;
+        int[] weights = index.weights;
+
+        //links of u that got cheaper, or are new, can pull routers closer
+        for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+            int candidate = distance[u] + weights[k];
+            if (candidate < distance[targets[k]]) {
+                distance[targets[k]] = candidate;
+                predecessor[targets[k]] = u;
+                tentative.insertOrDecrease(targets[k], candidate);
+            }
+        }
+
+        //propagate the changed distances
+        while (!tentative.isEmpty()) {
+            int node = tentative.poll();
+
+            for (int k = offsets[node]; k < offsets[node + 1]; k++) {
+                int target = targets[k];
+                int candidate = distance[node] + weights[k];
+
+                if (candidate < distance[target]) {
+                    distance[target] = candidate;
+                    predecessor[target] = node;
+                    tentative.insertOrDecrease(target, candidate);
+                }
+            }
+        }
+
+        return tree;
+    }
+
+    //returns the cost of the cheapest link from u to v in the index, or UNREACHABLE if there is none
+    private static int cheapestLink(AdjacencyIndex index, int u, int v) {
+        int cheapest = UNREACHABLE;
+        for (int k = index.offsets[u]; k < index.offsets[u + 1]; k++) {
+            if (index.targets[k] == v && index.weights[k] < cheapest) {
+                cheapest = index.weights[k];
+            }
+        }
+        return cheapest;
+    }
+
+    boolean isReachable(int v) {
+        return distance[v] != UNREACHABLE;
+    }
+
+    /**
+     * returns every router right before v on one of its shortest paths, the tree predecessor first. They are found
+     * among the in-links of v, so the tree itself only ever has to keep one predecessor. A link that costs nothing
+     * only counts as the tree edge, which keeps the predecessors of all routers free of cycles.
+     */
+    int[] predecessors(int v) {
+        if (predecessor[v] == -1) return new int[0];
+
+        int from = index.sourceOffsets[v];
+        int to = index.sourceOffsets[v + 1];
+        int[] found = new int[to - from + 1];
+        int count = 0;
+        found[count++] = predecessor[v];
+
+        for (int k = from; k < to; k++) {
+            int u = index.sources[k];
+            int weight = index.sourceWeights[k];
+            if (weight <= 0 || !isReachable(u) || distance[u] + weight != distance[v]) continue;
+
+            //the same router can show up twice, as the tree predecessor or through a second link
+            boolean seen = false;
+            for (int i = 0; i < count && !seen; i++) {
+                seen = found[i] == u;
+            }
+            if (!seen) found[count++] = u;
+        }
+        return Arrays.copyOf(found, count);
+    }
+}
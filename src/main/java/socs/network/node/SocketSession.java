@@ -0,0 +1,121 @@
+package socs.network.node;
+
+import socs.network.message.EncodingException;
+import socs.network.message.PacketCodec;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Session over a blocking TCP socket. Messages are sent as frames: a 4-byte length followed by the encoded message,
+ * so any number of packets can follow each other on the same connection.
+ */
+class SocketSession extends Session {
+
+    static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private final Socket socket;
+    private final PacketCodec codec;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+
+    SocketSession(Socket socket, PacketCodec codec) throws IOException {
+        this.socket = socket;
+        this.codec = codec;
+        socket.setTcpNoDelay(true);
+        input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    //opens a new session to the router process listening on the given address
+    static SocketSession connect(String processIP, short processPort, PacketCodec codec) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(processIP, processPort), CONNECT_TIMEOUT_MS);
+            return new SocketSession(socket, codec);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    synchronized void send(Object message) throws IOException {
+        if (socket.isClosed()) {
+            throw new IOException("Session is closed");
+        }
+
+        byte[] frame = codec.encode(message);
+        if (frame.length > NioSession.MAX_FRAME) {
+            throw new EncodingException("Message of " + frame.length + " bytes is longer than a frame");
+        }
+        output.writeInt(frame.length);
+        output.write(frame);
+        output.flush();
+        sent(message, frame.length);
+    }
+
+    /**
+     * returns the task reading the session on a thread of its own, which dispatches every message to a new handler
+     * for the router until the neighbor closes the session
+     */
+    Runnable reader(final Router router) {
+        final ClientHandler handler = new ClientHandler(this, router);
+        return new Runnable() {
+            public void run() {
+                router.activeHandlers.increment();
+                try {
+
+                    Object request;
+
+                    //keep reading until the neighbor closes the session
+                    while ((request = receive()) != null) {
+                        handler.dispatch(request);
+                    }
+
+                } catch (IOException ex) {
+                    //the connection dropped, the next send to this neighbor opens a new one
+                } finally {
+                    router.activeHandlers.decrement();
+                    router.sessionClosed(SocketSession.this);
+                    close();
+                }
+            }
+        };
+    }
+
+    /**
+     * blocks until the next message arrives
+     *
+     * @return the message, or null if the neighbor closed the connection
+     */
+    private Object receive() throws IOException {
+        int length;
+        try {
+            length = input.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > NioSession.MAX_FRAME) {
+            throw new IOException("Corrupted frame length " + length);
+        }
+
+        byte[] frame = new byte[length];
+        input.readFully(frame);
+        Object message = codec.decode(frame);
+        received(message, length);
+        return message;
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Error while closing session");
+        }
+    }
+
+    boolean isOpen() {
+        return !socket.isClosed();
+    }
+}
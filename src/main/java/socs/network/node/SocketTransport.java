@@ -0,0 +1,15 @@
+package socs.network.node;
+
+import java.io.IOException;
+
+/**
+ * Reaches other router processes over TCP, each session read by its own task
+ */
+class SocketTransport implements Transport {
+
+    public Session connect(Router router, String processIP, short processPort) throws IOException {
+        SocketSession session = SocketSession.connect(processIP, processPort, router.codec);
+        router.executor.execute(session.reader(router));
+        return session;
+    }
+}
@@ -0,0 +1,112 @@
+package socs.network.node;
+
+import socs.network.util.Ticker;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throttles SPF runs the way OSPF does. The first change after a quiet period is routed around after a short
+ * initial delay. A change that comes in less than the hold time after the last run waits until the hold time has
+ * passed, and the hold time then doubles, up to the max wait, for as long as the churn goes on. Once a hold time
+ * passes without a change it drops back to its configured value. Every change that arrives while a run is already
+ * scheduled is folded into that run.
+ */
+class SpfScheduler {
+
+    private final ScheduledExecutorService timers;
+    private final Executor executor;
+    private final Runnable spf;
+    private final Ticker ticker;
+
+    private final long initialDelayMs;
+    private final long holdMs;
+    private final long maxWaitMs;
+
+    //the hold time in force, between holdMs and maxWaitMs
+    private long currentHoldMs;
+    //ticker reading at which the last run started, 0 before the first one
+    private long lastRun = 0;
+    private boolean scheduled = false;
+
+    //changes that asked for a run, and those folded into a run already scheduled
+    final LongAdder triggers = new LongAdder();
+    final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param timers   schedules the runs
+     * @param executor runs the SPF itself, so a long run never holds up other timers
+     * @param spf      brings the routing table up to date with every change made so far
+     */
+    SpfScheduler(ScheduledExecutorService timers, Executor executor, Runnable spf,
+                 long initialDelayMs, long holdMs, long maxWaitMs) {
+        this(timers, executor, spf, initialDelayMs, holdMs, maxWaitMs, Ticker.SYSTEM);
+    }
+
+    /**
+     * @param ticker measures the time since the last run
+     */
+    SpfScheduler(ScheduledExecutorService timers, Executor executor, Runnable spf,
+                 long initialDelayMs, long holdMs, long maxWaitMs, Ticker ticker) {
+        this.timers = timers;
+        this.executor = executor;
+        this.spf = spf;
+        this.ticker = ticker;
+        this.initialDelayMs = Math.max(0, initialDelayMs);
+        this.holdMs = Math.max(this.initialDelayMs, holdMs);
+        this.maxWaitMs = Math.max(this.holdMs, maxWaitMs);
+        this.currentHoldMs = this.holdMs;
+    }
+
+    /**
+     * asks for an SPF run to take in a change made before this call
+     */
+    synchronized void trigger() {
+        triggers.increment();
+        if (scheduled) {
+            coalesced.increment();
+            return;
+        }
+        scheduled = true;
+
+        long sinceLast = lastRun == 0 ? Long.MAX_VALUE : TimeUnit.NANOSECONDS.toMillis(ticker.read() - lastRun);
+        long delay;
+        if (sinceLast >= currentHoldMs) {
+            //quiet since the last run
+            currentHoldMs = holdMs;
+            delay = initialDelayMs;
+        } else {
+            //still churning, wait out the hold time and back off further for the next change
+            delay = Math.max(initialDelayMs, currentHoldMs - sinceLast);
+            currentHoldMs = Math.min(currentHoldMs * 2, maxWaitMs);
+        }
+
+        timers.schedule(new Runnable() {
+            public void run() {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        runSpf();
+                    }
+                });
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * returns the hold time in force, which grows while changes keep coming in
+     */
+    synchronized long currentHoldMs() {
+        return currentHoldMs;
+    }
+
+    private void runSpf() {
+        //a change made from now on needs a run of its own, this one may already have missed it
+        synchronized (this) {
+            scheduled = false;
+            lastRun = ticker.read();
+        }
+        spf.run();
+    }
+}
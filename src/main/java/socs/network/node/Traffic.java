@@ -0,0 +1,89 @@
+package socs.network.node;
+
+import socs.network.message.SOSPFPacket;
+import socs.network.util.Metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the packets and bytes a router sends and receives, by packet type and by neighbor. Sessions report every
+ * frame they encode or decode. The counters live in the router's {@link Metrics} but are resolved once, so counting
+ * a packet is a few array reads and LongAdder increments, plus one map lookup for the neighbor.
+ */
+class Traffic {
+
+    //names of the packet types by sospfType, then the plain String replies, then anything else
+    private static final String[] TYPES = {"hello", "lsaUpdate", "connect", "disconnect", "databaseDescription",
+            "lsRequest", "data", "string", "other"};
+    private static final int STRING = TYPES.length - 2;
+    private static final int OTHER = TYPES.length - 1;
+
+    private static final int PACKETS_IN = 0;
+    private static final int BYTES_IN = 1;
+    private static final int PACKETS_OUT = 2;
+    private static final int BYTES_OUT = 3;
+
+    private final Metrics metrics;
+    //byType[type][PACKETS_IN..BYTES_OUT]
+    private final LongAdder[][] byType = new LongAdder[TYPES.length][];
+    //neighbor simulated IP => its PACKETS_IN..BYTES_OUT
+    private final ConcurrentHashMap<String, LongAdder[]> byNeighbor = new ConcurrentHashMap<String, LongAdder[]>();
+
+    Traffic(Metrics metrics) {
+        this.metrics = metrics;
+        for (int type = 0; type < TYPES.length; type++) {
+            byType[type] = counters("traffic." + TYPES[type]);
+        }
+    }
+
+    /**
+     * counts a frame received on the session, the neighbor being the sender named in the packet, except for DATA
+     * packets which name the router they started from
+     */
+    void received(Session session, Object message, int bytes) {
+        String neighbor = message instanceof SOSPFPacket && ((SOSPFPacket) message).sospfType != 6
+                ? ((SOSPFPacket) message).srcIP : session.neighbor;
+        count(message, neighbor, bytes, PACKETS_IN, BYTES_IN);
+    }
+
+    /**
+     * counts a frame sent on the session to the neighbor it is bound to
+     */
+    void sent(Session session, Object message, int bytes) {
+        String neighbor = session.neighbor;
+        if (neighbor == null && message instanceof SOSPFPacket) neighbor = ((SOSPFPacket) message).dstIP;
+        count(message, neighbor, bytes, PACKETS_OUT, BYTES_OUT);
+    }
+
+    private void count(Object message, String neighbor, int bytes, int packets, int size) {
+        LongAdder[] type = byType[typeOf(message)];
+        type[packets].increment();
+        type[size].add(bytes);
+
+        //frames sent before a session is bound to a neighbor, like the attach exchange, are only counted by type
+        if (neighbor == null) return;
+
+        LongAdder[] counters = byNeighbor.get(neighbor);
+        if (counters == null) {
+            LongAdder[] created = counters("neighbor." + neighbor);
+            counters = byNeighbor.putIfAbsent(neighbor, created);
+            if (counters == null) counters = created;
+        }
+        counters[packets].increment();
+        counters[size].add(bytes);
+    }
+
+    private static int typeOf(Object message) {
+        if (message instanceof String) return STRING;
+        if (!(message instanceof SOSPFPacket)) return OTHER;
+
+        short type = ((SOSPFPacket) message).sospfType;
+        return type >= 0 && type < STRING ? type : OTHER;
+    }
+
+    private LongAdder[] counters(String prefix) {
+        return new LongAdder[]{metrics.counter(prefix + ".packetsIn"), metrics.counter(prefix + ".bytesIn"),
+                metrics.counter(prefix + ".packetsOut"), metrics.counter(prefix + ".bytesOut")};
+    }
+}
@@ -0,0 +1,16 @@
+package socs.network.node;
+
+import java.io.IOException;
+
+/**
+ * How a router reaches the other router processes. Sessions are normally TCP connections; the simulator swaps in an
+ * in-memory transport so thousands of routers can run in one JVM.
+ */
+public interface Transport {
+
+    /**
+     * opens a session to the router process at the given address. Every packet arriving on it is dispatched to the
+     * given router, the same way as on a session the router accepted.
+     */
+    Session connect(Router router, String processIP, short processPort) throws IOException;
+}
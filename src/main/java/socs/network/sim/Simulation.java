@@ -0,0 +1,306 @@
+package socs.network.sim;
+
+import socs.network.node.LoopbackTransport;
+import socs.network.node.Router;
+import socs.network.util.Configuration;
+import socs.network.util.Histogram;
+import socs.network.util.IPv4;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs a whole network of routers in one JVM over a {@link LoopbackTransport}: builds the topology, attaches every
+ * link, starts every router at once and waits until the flooding settles. It then reports how long convergence took,
+ * how much was sent, and whether every router ended up with the same link state database. Given a number of DATA
+ * packets, it then sends them between random pairs of routers and reports the forwarding throughput.
+ * <p/>
+ * usage: Simulation ring|grid|random|scalefree routers [seed] [codec] [packets]
+ */
+public class Simulation {
+
+    //the network counts as settled once nothing has been delivered for this long
+    private static final long QUIET_MS = 1000;
+    private static final long TIMEOUT_MS = 10 * 60 * 1000;
+
+    private final Topology topology;
+    private final String codec;
+    private final LoopbackTransport transport = new LoopbackTransport();
+    private final Router[] routers;
+
+    public Simulation(Topology topology, String codec) {
+        this.topology = topology;
+        this.codec = codec;
+        this.routers = new Router[topology.size];
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("usage: Simulation ring|grid|random|scalefree routers [seed] [codec] [packets]");
+            System.exit(1);
+        }
+
+        int n = Integer.parseInt(args[1]);
+        Random random = new Random(args.length > 2 ? Long.parseLong(args[2]) : 535);
+        String codec = args.length > 3 ? args[3] : "binary";
+        int packets = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        Topology topology;
+        if (args[0].equals("ring")) {
+            topology = Topology.ring(n, random);
+        } else if (args[0].equals("grid")) {
+            int width = (int) Math.ceil(Math.sqrt(n));
+            topology = Topology.grid(width, (n + width - 1) / width, random);
+        } else if (args[0].equals("random")) {
+            topology = Topology.random(n, 4, random);
+        } else if (args[0].equals("scalefree")) {
+            topology = Topology.scaleFree(n, 2, random);
+        } else {
+            System.out.println("Unknown topology " + args[0]);
+            System.exit(1);
+            return;
+        }
+
+        Simulation simulation = new Simulation(topology, codec);
+        System.out.println(simulation.run());
+        if (packets > 0) {
+            System.out.println(simulation.forward(packets, random));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * builds, attaches and starts every router, then waits for the network to converge
+     */
+    public Report run() throws IOException, InterruptedException {
+        if (topology.size > Short.MAX_VALUE - 1) {
+            throw new IllegalArgumentException("At most " + (Short.MAX_VALUE - 1) + " routers fit in the process ports");
+        }
+
+        //the routers narrate everything they do, which is just noise with thousands of them
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+
+        try {
+            int ports = Math.max(1, topology.maxDegree());
+            for (int i = 0; i < routers.length; i++) {
+                Configuration config = new Configuration();
+                config.addEntry("socs.network.router.ip", ipOf(i));
+                config.addEntry("socs.network.router.port", String.valueOf(i + 1));
+                config.addEntry("socs.network.router.ports", String.valueOf(ports));
+                config.addEntry("socs.network.router.codec", codec);
+                config.addEntry("socs.network.router.executor", "shared");
+                //periodic HELLOs would keep the network from ever going quiet, and the same queueing could make
+                //them late enough to take healthy neighbors for dead
+                config.addEntry("socs.network.router.helloIntervalMs", "0");
+
+                routers[i] = new Router(config, transport);
+                transport.register(routers[i]);
+            }
+
+            for (int[] link : topology.links) {
+                routers[link[0]].processAttach("127.0.0.1", (short) (link[1] + 1), ipOf(link[1]), (short) link[2]);
+            }
+
+            long packetsBefore = transport.getPackets();
+            long bytesBefore = transport.getBytes();
+            long start = System.nanoTime();
+
+            for (Router router : routers) {
+                router.processStart();
+            }
+
+            boolean consistent = awaitConvergence(start);
+
+            long updates = 0;
+            for (Router router : routers) {
+                updates += router.getUpdatesSent();
+            }
+
+            return new Report(routers.length, topology.getLinkCount(), consistent,
+                    Math.max(0, transport.getLastDelivery() - start) / 1000000,
+                    transport.getPackets() - packetsBefore, transport.getBytes() - bytesBefore, updates);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * sends DATA packets between random pairs of distinct routers as fast as they can be handed off, then waits
+     * until every one was delivered or dropped
+     */
+    public Throughput forward(int packets, Random random) throws InterruptedException {
+        if (routers.length < 2) {
+            throw new IllegalArgumentException("Forwarding needs at least two routers");
+        }
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+
+        try {
+            long before = dataDone();
+            long deliveredBefore = delivered();
+            long start = System.nanoTime();
+
+            for (int i = 0; i < packets; i++) {
+                int source = random.nextInt(routers.length);
+                int destination = random.nextInt(routers.length - 1);
+                if (destination >= source) destination++;
+                routers[source].send(ipOf(destination), "packet " + i);
+            }
+
+            long deadline = start + TIMEOUT_MS * 1000000;
+            while (dataDone() - before < packets && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            Histogram hopLatency = new Histogram("us");
+            Histogram pathLength = new Histogram("");
+            for (Router router : routers) {
+                hopLatency.add(router.getHopLatency());
+                pathLength.add(router.getPathLength());
+            }
+            return new Throughput(packets, delivered() - deliveredBefore, elapsed / 1000, hopLatency, pathLength);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    //DATA packets delivered so far by every router together
+    private long delivered() {
+        long delivered = 0;
+        for (Router router : routers) {
+            delivered += router.getDataDelivered();
+        }
+        return delivered;
+    }
+
+    //DATA packets delivered or dropped so far by every router together
+    private long dataDone() {
+        long done = 0;
+        for (Router router : routers) {
+            done += router.getDataDelivered() + router.getDataDropped();
+        }
+        return done;
+    }
+
+    //waits until the network goes quiet with every router holding the same full database, or the timeout passes
+    private boolean awaitConvergence(long start) throws InterruptedException {
+        long deadline = start + TIMEOUT_MS * 1000000;
+
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(100);
+
+            if (System.nanoTime() - transport.getLastDelivery() < QUIET_MS * 1000000) continue;
+            if (isConsistent()) return true;
+        }
+        return isConsistent();
+    }
+
+    /**
+     * returns true if every router has an LSA of every router, and the same sequence numbers as every other router
+     */
+    public boolean isConsistent() {
+        Map<String, Integer> first = routers[0].getDatabaseSummary();
+        if (first.size() != routers.length) return false;
+
+        for (int i = 1; i < routers.length; i++) {
+            if (!first.equals(routers[i].getDatabaseSummary())) return false;
+        }
+        return true;
+    }
+
+    //simulated IPs are 10.x.y.z, counting up from 10.0.0.1
+    private static String ipOf(int router) {
+        return IPv4.format((10 << 24) + router + 1);
+    }
+
+    /**
+     * outcome of one run
+     */
+    public static class Report {
+
+        public final int routers;
+        public final int links;
+        public final boolean consistent;
+        //from the first HELLO to the last packet delivered
+        public final long convergenceMs;
+        public final long packets;
+        public final long bytes;
+        public final long updates;
+
+        Report(int routers, int links, boolean consistent, long convergenceMs, long packets, long bytes, long updates) {
+            this.routers = routers;
+            this.links = links;
+            this.consistent = consistent;
+            this.convergenceMs = convergenceMs;
+            this.packets = packets;
+            this.bytes = bytes;
+            this.updates = updates;
+        }
+
+        public String toString() {
+            return "routers=" + routers + " links=" + links + " converged=" + consistent
+                    + " convergence=" + convergenceMs + "ms packets=" + packets + " bytes=" + bytes
+                    + " lsaUpdates=" + updates;
+        }
+    }
+
+    /**
+     * outcome of one round of DATA forwarding
+     */
+    public static class Throughput {
+
+        public final int sent;
+        public final long delivered;
+        //from the first send until the last packet was delivered or dropped
+        public final long elapsedUs;
+        //time each router took to hand a packet on, and the hops each delivered packet took
+        public final Histogram hopLatency;
+        public final Histogram pathLength;
+
+        Throughput(int sent, long delivered, long elapsedUs, Histogram hopLatency, Histogram pathLength) {
+            this.sent = sent;
+            this.delivered = delivered;
+            this.elapsedUs = elapsedUs;
+            this.hopLatency = hopLatency;
+            this.pathLength = pathLength;
+        }
+
+        /**
+         * returns the packets delivered per second
+         */
+        public long packetsPerSecond() {
+            return elapsedUs == 0 ? 0 : delivered * 1000000 / elapsedUs;
+        }
+
+        /**
+         * returns the hops handed on per second, every router of the network together
+         */
+        public long hopsPerSecond() {
+            return elapsedUs == 0 ? 0 : hopLatency.count() * 1000000 / elapsedUs;
+        }
+
+        public String toString() {
+            return "sent=" + sent + " delivered=" + delivered + " elapsed=" + elapsedUs / 1000 + "ms"
+                    + " throughput=" + packetsPerSecond() + "pkt/s forwarding=" + hopsPerSecond() + "hops/s"
+                    + "\nhops:        " + pathLength + "\nhop latency: " + hopLatency;
+        }
+    }
+}
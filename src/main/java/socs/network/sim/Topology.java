@@ -0,0 +1,140 @@
+package socs.network.sim;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Undirected network of routers numbered 0 to size - 1, with a random weight from 1 to 10 on every link. Every
+ * topology built here is connected and has no duplicate links or self links.
+ */
+public class Topology {
+
+    final int size;
+    //every link as {router, router, weight}
+    final List<int[]> links = new ArrayList<int[]>();
+
+    private final Random random;
+    private final Set<Long> linked = new HashSet<Long>();
+    private final int[] degree;
+
+    private Topology(int size, Random random) {
+        this.size = size;
+        this.random = random;
+        this.degree = new int[size];
+    }
+
+    /**
+     * every router linked to the next one, the last one back to the first
+     */
+    public static Topology ring(int size, Random random) {
+        Topology topology = new Topology(size, random);
+        for (int i = 0; i < size; i++) {
+            topology.link(i, (i + 1) % size);
+        }
+        return topology;
+    }
+
+    /**
+     * routers on a width x height grid, each linked to the routers left, right, above and below it
+     */
+    public static Topology grid(int width, int height, Random random) {
+        Topology topology = new Topology(width * height, random);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (x + 1 < width) topology.link(y * width + x, y * width + x + 1);
+                if (y + 1 < height) topology.link(y * width + x, (y + 1) * width + x);
+            }
+        }
+        return topology;
+    }
+
+    /**
+     * a random spanning tree, so the network is connected, plus random links until the average degree is reached
+     */
+    public static Topology random(int size, int averageDegree, Random random) {
+        Topology topology = new Topology(size, random);
+        for (int i = 1; i < size; i++) {
+            topology.link(i, random.nextInt(i));
+        }
+
+        long wanted = Math.min((long) size * averageDegree / 2, (long) size * (size - 1) / 2);
+        while (topology.links.size() < wanted) {
+            topology.link(random.nextInt(size), random.nextInt(size));
+        }
+        return topology;
+    }
+
+    /**
+     * Barabasi-Albert preferential attachment: each new router links to the given number of existing ones, picked
+     * with a probability proportional to their degree, which grows a few highly connected hubs
+     */
+    public static Topology scaleFree(int size, int linksPerRouter, Random random) {
+        Topology topology = new Topology(size, random);
+
+        //every router appears here once per link it has, so a uniform pick is proportional to degree
+        int[] ends = new int[2 * size * linksPerRouter + 2];
+        int endCount = 0;
+
+        int seed = Math.min(size, linksPerRouter + 1);
+        for (int i = 1; i < seed; i++) {
+            for (int j = 0; j < i; j++) {
+                if (topology.link(i, j)) {
+                    ends[endCount++] = i;
+                    ends[endCount++] = j;
+                }
+            }
+        }
+
+        for (int i = seed; i < size; i++) {
+            int added = 0;
+            for (int attempt = 0; added < linksPerRouter && attempt < 10 * linksPerRouter; attempt++) {
+                int target = endCount == 0 ? random.nextInt(i) : ends[random.nextInt(endCount)];
+                if (topology.link(i, target)) {
+                    ends[endCount++] = i;
+                    ends[endCount++] = target;
+                    added++;
+                }
+            }
+        }
+        return topology;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getLinkCount() {
+        return links.size();
+    }
+
+    /**
+     * returns every link as {router, router, weight}
+     */
+    public List<int[]> getLinks() {
+        return links;
+    }
+
+    int maxDegree() {
+        int max = 0;
+        for (int d : degree) {
+            max = Math.max(max, d);
+        }
+        return max;
+    }
+
+    //adds a link unless it would be a self link or a duplicate
+    private boolean link(int a, int b) {
+        if (a == b) return false;
+
+        long key = (long) Math.min(a, b) * size + Math.max(a, b);
+        if (!linked.add(key)) return false;
+
+        links.add(new int[]{a, b, 1 + random.nextInt(10)});
+        degree[a]++;
+        degree[b]++;
+        return true;
+    }
+}
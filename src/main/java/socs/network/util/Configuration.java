@@ -5,6 +5,8 @@ import com.typesafe.config.ConfigFactory;
 import com.typesafe.config.ConfigValueFactory;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 
 public class Configuration {
@@ -15,6 +17,11 @@ public class Configuration {
     _config = ConfigFactory.parseFile(new File(path));
   }
 
+  //an empty configuration, to be filled with addEntry
+  public Configuration() {
+    _config = ConfigFactory.empty();
+  }
+
   public String getString(String key) {
     return _config.getString(key);
   }
@@ -27,6 +34,23 @@ public class Configuration {
     return _config.getInt(key);
   }
 
+  public String getString(String key, String defaultValue) {
+    return _config.hasPath(key) ? _config.getString(key) : defaultValue;
+  }
+
+  public boolean getBoolean(String key, boolean defaultValue) {
+    return _config.hasPath(key) ? _config.getBoolean(key) : defaultValue;
+  }
+
+  public int getInt(String key, int defaultValue) {
+    return _config.hasPath(key) ? _config.getInt(key) : defaultValue;
+  }
+
+  //returns the list of strings at the key, or an empty list if there is none
+  public List<String> getStringList(String key) {
+    return _config.hasPath(key) ? _config.getStringList(key) : Collections.<String>emptyList();
+  }
+
   public short getShort(String key) {
     return (short) _config.getInt(key);
   }
@@ -0,0 +1,86 @@
+package socs.network.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, cheap enough to record on every packet. Values fall into power-of-two
+ * buckets, so percentiles are reported as the upper bound of the bucket they land in.
+ */
+public class Histogram {
+
+  private final String unit;
+  //bucket i holds the values whose highest set bit is bit i - 1, bucket 0 holds zero
+  private final AtomicLongArray buckets = new AtomicLongArray(65);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public Histogram(String unit) {
+    this.unit = unit;
+  }
+
+  public void record(long value) {
+    if (value < 0) value = 0;
+
+    buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+
+    long current;
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+      //retry until the max holds a value at least as large as ours
+    }
+  }
+
+  /**
+   * records every value the other histogram holds, for a summary over several of them
+   */
+  public void add(Histogram other) {
+    for (int i = 0; i < buckets.length(); i++) {
+      buckets.addAndGet(i, other.buckets.get(i));
+    }
+    count.addAndGet(other.count.get());
+    sum.addAndGet(other.sum.get());
+
+    long value = other.max.get();
+    long current;
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+      //retry until the max holds a value at least as large as theirs
+    }
+  }
+
+  public long count() {
+    return count.get();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  public long mean() {
+    long n = count.get();
+    return n == 0 ? 0 : sum.get() / n;
+  }
+
+  //returns an upper bound of the value below which the given fraction (0 to 1) of the recorded values fall
+  public long percentile(double fraction) {
+    long n = count.get();
+    if (n == 0) return 0;
+
+    long rank = (long) Math.ceil(fraction * n);
+    long seen = 0;
+    for (int i = 0; i < buckets.length(); i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        return i == 0 ? 0 : Math.min(max.get(), i == 64 ? Long.MAX_VALUE : (1L << i) - 1);
+      }
+    }
+    return max.get();
+  }
+
+  public String toString() {
+    return "count=" + count() + " mean=" + mean() + unit + " p50=" + percentile(0.5) + unit
+            + " p90=" + percentile(0.9) + unit + " p99=" + percentile(0.99) + unit + " max=" + max() + unit;
+  }
+}
@@ -0,0 +1,74 @@
+package socs.network.util;
+
+/**
+ * Conversions between dotted-quad simulated IP addresses and their 32-bit integer form
+ */
+public class IPv4 {
+
+  //returns the address as an int, or throws IllegalArgumentException if it is not a dotted-quad IPv4 address
+  public static int parse(String address) {
+    int value = 0;
+    int octets = 0;
+    int octet = -1;
+
+    for (int i = 0; i <= address.length(); i++) {
+      char c = i < address.length() ? address.charAt(i) : '.';
+
+      if (c == '.') {
+        if (octet < 0 || ++octets > 4) {
+          throw new IllegalArgumentException("Not an IPv4 address: " + address);
+        }
+        value = (value << 8) | octet;
+        octet = -1;
+      } else if (c >= '0' && c <= '9') {
+        octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+        if (octet > 255) {
+          throw new IllegalArgumentException("Not an IPv4 address: " + address);
+        }
+      } else {
+        throw new IllegalArgumentException("Not an IPv4 address: " + address);
+      }
+    }
+
+    if (octets != 4) {
+      throw new IllegalArgumentException("Not an IPv4 address: " + address);
+    }
+    return value;
+  }
+
+  /**
+   * returns the address of a prefix written address/length, e.g. 192.168.4.0/24, with the bits past its length
+   * cleared, or throws IllegalArgumentException if it is not one
+   */
+  public static int prefixAddress(String prefix) {
+    int slash = prefix.indexOf('/');
+    if (slash < 0) {
+      throw new IllegalArgumentException("Not an IPv4 prefix: " + prefix);
+    }
+    return parse(prefix.substring(0, slash)) & PrefixTrie.mask(prefixLength(prefix));
+  }
+
+  //returns the length of a prefix written address/length, or throws IllegalArgumentException if it is not one
+  public static int prefixLength(String prefix) {
+    int slash = prefix.indexOf('/');
+    int length;
+    try {
+      length = slash < 0 ? -1 : Integer.parseInt(prefix.substring(slash + 1));
+    } catch (NumberFormatException e) {
+      length = -1;
+    }
+    if (length < 0 || length > 32) {
+      throw new IllegalArgumentException("Not an IPv4 prefix: " + prefix);
+    }
+    return length;
+  }
+
+  public static String formatPrefix(int address, int length) {
+    return format(address & PrefixTrie.mask(length)) + "/" + length;
+  }
+
+  public static String format(int address) {
+    return ((address >>> 24) & 0xff) + "." + ((address >>> 16) & 0xff) + "."
+            + ((address >>> 8) & 0xff) + "." + (address & 0xff);
+  }
+}
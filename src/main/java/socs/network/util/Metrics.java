@@ -0,0 +1,187 @@
+package socs.network.util;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters, histograms and gauges of one router. Counters are LongAdders and histograms are lock-free, so
+ * recording stays cheap on the packet path; a gauge is only read when the metrics are. The whole registry can be
+ * printed, and exported over JMX as one MBean whose attributes are the metrics, each histogram split into count,
+ * mean, p50, p90, p99 and max.
+ */
+public class Metrics {
+
+  /**
+   * a value computed when it is read, like the size of a table
+   */
+  public interface Gauge {
+    long value();
+  }
+
+  private static final String[] HISTOGRAM_FIELDS = {"count", "mean", "p50", "p90", "p99", "max"};
+
+  private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+  private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+  private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+  /**
+   * returns the counter with the given name, creating it the first time
+   */
+  public LongAdder counter(String name) {
+    LongAdder counter = counters.get(name);
+    if (counter == null) {
+      LongAdder created = new LongAdder();
+      counter = counters.putIfAbsent(name, created);
+      if (counter == null) counter = created;
+    }
+    return counter;
+  }
+
+  /**
+   * returns the histogram with the given name, creating it with the given unit the first time
+   */
+  public Histogram histogram(String name, String unit) {
+    Histogram histogram = histograms.get(name);
+    if (histogram == null) {
+      Histogram created = new Histogram(unit);
+      histogram = histograms.putIfAbsent(name, created);
+      if (histogram == null) histogram = created;
+    }
+    return histogram;
+  }
+
+  //adds a histogram kept by someone else under the given name
+  public void register(String name, Histogram histogram) {
+    histograms.put(name, histogram);
+  }
+
+  public void gauge(String name, Gauge gauge) {
+    gauges.put(name, gauge);
+  }
+
+  /**
+   * returns the current value of every counter and gauge, and the summary of every histogram, sorted by name
+   */
+  public Map<String, Object> values() {
+    Map<String, Object> values = new ConcurrentSkipListMap<String, Object>();
+    for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+      values.put(counter.getKey(), counter.getValue().sum());
+    }
+    for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+      values.put(gauge.getKey(), gauge.getValue().value());
+    }
+    for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+      values.put(histogram.getKey(), histogram.getValue());
+    }
+    return values;
+  }
+
+  /**
+   * exports the metrics over the platform MBean server under the given object name
+   */
+  public void export(String objectName) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(objectName));
+  }
+
+  public void unexport(String objectName) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(objectName));
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Object> value : values().entrySet()) {
+      sb.append(value.getKey()).append(": ").append(value.getValue()).append("\n");
+    }
+    return sb.toString();
+  }
+
+  //returns a value of the metric behind a JMX attribute, or null if there is no such metric
+  private Long read(String attribute) {
+    LongAdder counter = counters.get(attribute);
+    if (counter != null) return counter.sum();
+
+    Gauge gauge = gauges.get(attribute);
+    if (gauge != null) return gauge.value();
+
+    int dot = attribute.lastIndexOf('.');
+    Histogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+    if (histogram == null) return null;
+
+    String field = attribute.substring(dot + 1);
+    if (field.equals("count")) return histogram.count();
+    if (field.equals("mean")) return histogram.mean();
+    if (field.equals("p50")) return histogram.percentile(0.5);
+    if (field.equals("p90")) return histogram.percentile(0.9);
+    if (field.equals("p99")) return histogram.percentile(0.99);
+    if (field.equals("max")) return histogram.max();
+    return null;
+  }
+
+  /**
+   * read-only view of the registry for JMX. The attributes are listed anew on every request, so metrics created
+   * after the export, like those of a new neighbor, show up too.
+   */
+  private class Bean implements DynamicMBean {
+
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+      Long value = read(attribute);
+      if (value == null) throw new AttributeNotFoundException(attribute);
+      return value;
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+      AttributeList list = new AttributeList();
+      for (String attribute : attributes) {
+        Long value = read(attribute);
+        if (value != null) list.add(new Attribute(attribute, value));
+      }
+      return list;
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+      throw new AttributeNotFoundException("Metrics are read-only");
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    public Object invoke(String action, Object[] params, String[] signature) throws MBeanException {
+      throw new MBeanException(new UnsupportedOperationException(action));
+    }
+
+    public MBeanInfo getMBeanInfo() {
+      List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+      for (String name : new ConcurrentSkipListMap<String, Object>(values()).keySet()) {
+        if (histograms.containsKey(name)) {
+          for (String field : HISTOGRAM_FIELDS) {
+            attributes.add(attribute(name + "." + field));
+          }
+        } else {
+          attributes.add(attribute(name));
+        }
+      }
+      return new MBeanInfo(Metrics.class.getName(), "Router metrics",
+              attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[0], null);
+    }
+
+    private MBeanAttributeInfo attribute(String name) {
+      return new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false);
+    }
+  }
+}
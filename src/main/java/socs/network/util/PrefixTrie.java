@@ -0,0 +1,295 @@
+package socs.network.util;
+
+import java.util.Arrays;
+
+/**
+ * Longest-prefix-match table over 32-bit IPv4 addresses, mapping each prefix to a non-negative int. It is a binary
+ * radix trie with path compression: a node only exists where a prefix ends or where two prefixes part ways, so there
+ * are fewer than two nodes per prefix and a lookup visits at most 33 of them. Nodes are packed four ints apiece into
+ * one array rather than being objects, which keeps millions of routes compact, keeps each node within a single cache
+ * line, and lets a lookup run without allocating.
+ * <p/>
+ * The top of the trie is where every lookup goes and where branches are densest, so it is skipped: an index over the
+ * first 16 bits of the address names the deepest node of at most 16 bits the address falls in, and the best value
+ * found above it, and the walk starts there. {@link #freeze} builds the index, and lays the nodes out again depth
+ * first on the way, so the rest of the walk stays within a few neighboring cache lines. Until then, and again after
+ * any insertion, lookups walk the whole way down from the root.
+ * <p/>
+ * Lookups may run concurrently with each other but not with insertions or freeze; build the table, freeze it, then
+ * share it.
+ */
+public class PrefixTrie {
+
+  //largest value a prefix can map to
+  public static final int MAX_VALUE = (1 << 25) - 1;
+
+  private static final int NONE = -1;
+
+  //every node takes four ints: its key, its two children, and its value and length together
+  private static final int STRIDE = 4;
+  private static final int KEY = 0;
+  private static final int CHILD = 1;
+  private static final int META = 3;
+
+  //node i covers the first length bits of its key, the rest of the key being zero. Its children, NONE if it has
+  //none, are at CHILD for a next bit of 0 and CHILD + 1 for 1. Its meta holds the value plus one above the length,
+  //the value being NONE if the node only joins two branches
+  private int[] nodes;
+  private int count = 0;
+  private int prefixes = 0;
+
+  //the nodes as laid out by the last freeze and the index over them, null if there was an insertion since
+  private Layout layout = null;
+
+  /**
+   * the nodes as lookups see them, and the index over the first 16 bits of an address, which gives the node to
+   * start the walk at and the best value above it, two ints apiece
+   */
+  private static class Layout {
+    final int[] nodes;
+    final int[] index;
+
+    Layout(int[] nodes, int[] index) {
+      this.nodes = nodes;
+      this.index = index;
+    }
+  }
+
+  public PrefixTrie() {
+    this(16);
+  }
+
+  /**
+   * @param expectedPrefixes how many prefixes the table is sized for before it has to grow
+   */
+  public PrefixTrie(int expectedPrefixes) {
+    nodes = new int[Math.max(2, expectedPrefixes * 2) * STRIDE];
+
+    //the root stands for the empty prefix, the default route
+    newNode(0, 0, NONE);
+  }
+
+  /**
+   * maps the prefix to the value, replacing any value it had
+   *
+   * @param address any address within the prefix, the bits past its length are ignored
+   * @param bits    length of the prefix, 0 to 32
+   * @param val     the value, 0 to MAX_VALUE
+   */
+  public void put(int address, int bits, int val) {
+    if (bits < 0 || bits > 32) throw new IllegalArgumentException("Prefix length out of range: " + bits);
+    if (val < 0 || val > MAX_VALUE) throw new IllegalArgumentException("Value out of range: " + val);
+    address &= mask(bits);
+    layout = null;
+
+    int node = 0;
+    while (true) {
+      int length = lengthOf(node);
+      if (length == bits) {
+        if (valueOf(node) == NONE) prefixes++;
+        nodes[node + META] = meta(val, bits);
+        return;
+      }
+
+      int slot = node + CHILD + bit(address, length);
+      int child = nodes[slot];
+      if (child == NONE) {
+        //newNode may grow the array, so it has to run before the write into it
+        int leaf = newNode(address, bits, val);
+        nodes[slot] = leaf;
+        prefixes++;
+        return;
+      }
+
+      //bits the child's prefix and ours have in common
+      int childLength = lengthOf(child);
+      int common = Math.min(Math.min(bits, childLength), Integer.numberOfLeadingZeros(address ^ nodes[child + KEY]));
+      if (common == childLength) {
+        //the child's prefix covers ours, go further down
+        node = child;
+        continue;
+      }
+
+      //our prefix and the child's part ways, or ours ends, before the child; either way a node goes in between
+      int between;
+      if (common == bits) {
+        between = newNode(address, bits, val);
+      } else {
+        between = newNode(address & mask(common), common, NONE);
+        int leaf = newNode(address, bits, val);
+        nodes[between + CHILD + bit(address, common)] = leaf;
+      }
+      nodes[between + CHILD + bit(nodes[child + KEY], common)] = child;
+      nodes[slot] = between;
+      prefixes++;
+      return;
+    }
+  }
+
+  /**
+   * returns the value of the longest prefix the address falls in, or -1 if it falls in none
+   */
+  public int lookup(int address) {
+    Layout layout = this.layout;
+
+    int[] nodes;
+    int node;
+    int best;
+    if (layout != null) {
+      nodes = layout.nodes;
+      int slot = (address >>> 16) * 2;
+      node = layout.index[slot];
+      best = layout.index[slot + 1];
+    } else {
+      nodes = this.nodes;
+      node = 0;
+      best = valueOf(nodes, 0);
+    }
+
+    int length = nodes[node + META] & 0x3f;
+    while (length < 32) {
+      int child = nodes[node + CHILD + ((address >>> (31 - length)) & 1)];
+      if (child == NONE) break;
+
+      int meta = nodes[child + META];
+      length = meta & 0x3f;
+      if (((address ^ nodes[child + KEY]) & mask(length)) != 0) break;
+
+      node = child;
+      if (meta >>> 6 != 0) best = (meta >>> 6) - 1;
+    }
+    return best;
+  }
+
+  /**
+   * lays the nodes out for lookups and builds the index over them, which every lookup until the next insertion uses
+   */
+  public void freeze() {
+    if (layout != null) return;
+
+    Layout built = buildLayout(nodes);
+    nodes = built.nodes;
+    layout = built;
+  }
+
+  //copies the nodes depth first, so every subtree is in one piece and a child mostly sits right after its parent,
+  //and indexes the copy
+  private static Layout buildLayout(int[] nodes) {
+    //a path is at most 33 nodes long, each leaving at most one sibling on the stack
+    int[] laidOut = new int[nodes.length];
+    int[] stack = new int[2 * 36];
+    int depth = 0;
+    int next = 0;
+    stack[depth++] = 0;
+    stack[depth++] = NONE;
+    while (depth > 0) {
+      int parentSlot = stack[--depth];
+      int node = stack[--depth];
+
+      int copy = next;
+      next += STRIDE;
+      System.arraycopy(nodes, node, laidOut, copy, STRIDE);
+      if (parentSlot != NONE) laidOut[parentSlot] = copy;
+
+      //the 1 branch goes on the stack first, so the 0 branch is copied right after its parent
+      for (int bit = 1; bit >= 0; bit--) {
+        int child = nodes[node + CHILD + bit];
+        if (child != NONE) {
+          stack[depth++] = child;
+          stack[depth++] = copy + CHILD + bit;
+        }
+      }
+    }
+
+    int[] index = new int[2 << 16];
+    fill(laidOut, index, 0, NONE);
+    return new Layout(laidOut, index);
+  }
+
+  //points every index entry the node covers at it, then lets its children of at most 16 bits take their share
+  private static void fill(int[] nodes, int[] index, int node, int best) {
+    int length = lengthOf(nodes, node);
+    if (valueOf(nodes, node) != NONE) best = valueOf(nodes, node);
+
+    int first = nodes[node + KEY] >>> 16;
+    int last = first + (1 << (16 - length));
+    for (int entry = first; entry < last; entry++) {
+      index[entry * 2] = node;
+      index[entry * 2 + 1] = best;
+    }
+
+    for (int bit = 0; bit < 2; bit++) {
+      int child = nodes[node + CHILD + bit];
+      if (child != NONE && lengthOf(nodes, child) <= 16) fill(nodes, index, child, best);
+    }
+  }
+
+  /**
+   * returns the value of exactly this prefix, or -1 if it was never put
+   */
+  public int get(int address, int bits) {
+    address &= mask(bits);
+
+    int node = 0;
+    while (lengthOf(node) < bits) {
+      int child = nodes[node + CHILD + bit(address, lengthOf(node))];
+      if (child == NONE || lengthOf(child) > bits
+              || ((address ^ nodes[child + KEY]) & mask(lengthOf(child))) != 0) {
+        return NONE;
+      }
+      node = child;
+    }
+    return lengthOf(node) == bits ? valueOf(node) : NONE;
+  }
+
+  /**
+   * returns the number of prefixes in the table
+   */
+  public int size() {
+    return prefixes;
+  }
+
+  //returns a mask of the first bits bits of an address
+  public static int mask(int bits) {
+    return bits == 0 ? 0 : -1 << (32 - bits);
+  }
+
+  //returns the bit of the address at the given position, counting from the most significant one
+  private static int bit(int address, int position) {
+    return (address >>> (31 - position)) & 1;
+  }
+
+  private static int meta(int val, int bits) {
+    return ((val + 1) << 6) | bits;
+  }
+
+  private int lengthOf(int node) {
+    return lengthOf(nodes, node);
+  }
+
+  private int valueOf(int node) {
+    return valueOf(nodes, node);
+  }
+
+  private static int lengthOf(int[] nodes, int node) {
+    return nodes[node + META] & 0x3f;
+  }
+
+  private static int valueOf(int[] nodes, int node) {
+    return (nodes[node + META] >>> 6) - 1;
+  }
+
+  //returns the offset of a new node in the array
+  private int newNode(int address, int bits, int val) {
+    if ((count + 1) * STRIDE > nodes.length) {
+      nodes = Arrays.copyOf(nodes, nodes.length * 2);
+    }
+
+    int node = count++ * STRIDE;
+    nodes[node + KEY] = address;
+    nodes[node + CHILD] = NONE;
+    nodes[node + CHILD + 1] = NONE;
+    nodes[node + META] = meta(val, bits);
+    return node;
+  }
+}
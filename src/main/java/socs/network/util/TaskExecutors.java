@@ -0,0 +1,52 @@
+package socs.network.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the executor that runs session handlers and outbound sends.
+ * <p/>
+ * "platform" keeps the original behavior of one new platform thread per task. "shared" runs every task on one pool of
+ * daemon threads, sized to the processors and shared by all routers of the JVM; it only suits transports whose
+ * sends never block, like the in-memory one of the simulator.
+ */
+public class TaskExecutors {
+
+  public static final String PLATFORM = "platform";
+  public static final String SHARED = "shared";
+
+  private static ExecutorService shared = null;
+
+  public static Executor create(String mode) {
+    if (SHARED.equals(mode)) {
+      return shared();
+    } else if (!PLATFORM.equals(mode)) {
+      System.err.println("Unknown executor mode " + mode + ", using platform threads");
+    }
+    return new ThreadPerTaskExecutor();
+  }
+
+  private static synchronized ExecutorService shared() {
+    if (shared == null) {
+      shared = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        public Thread newThread(Runnable task) {
+          Thread thread = new Thread(task, "shared-executor");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return shared;
+  }
+
+  /**
+   * starts a new platform thread for every task, like the original new Thread(new ClientHandler(...)) did
+   */
+  static class ThreadPerTaskExecutor implements Executor {
+    public void execute(Runnable task) {
+      new Thread(task).start();
+    }
+  }
+}
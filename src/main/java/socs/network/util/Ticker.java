@@ -0,0 +1,19 @@
+package socs.network.util;
+
+/**
+ * Source of the monotonic time that timing code measures intervals with. {@link #SYSTEM} reads System.nanoTime();
+ * tests hand in one they move on by hand, so delays and backoffs can be checked without sleeping.
+ */
+public abstract class Ticker {
+
+  public static final Ticker SYSTEM = new Ticker() {
+    public long read() {
+      return System.nanoTime();
+    }
+  };
+
+  /**
+   * returns the current time in nanoseconds, only meaningful compared to another reading of the same ticker
+   */
+  public abstract long read();
+}
@@ -0,0 +1,159 @@
+package socs.network.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel: one thread and a ring of buckets for any number of timeouts. Every tick the thread runs the
+ * timeouts of one bucket that are due and moves on to the next, so scheduling and cancelling cost the same however
+ * many timeouts are pending, and a timeout fires within a tick of its deadline, never before it. A timeout further
+ * away than a full turn of the wheel waits out the turns it needs in its bucket.
+ * <p/>
+ * Tasks run on the wheel's thread and have to be short; anything that may block belongs on an executor.
+ */
+public class TimerWheel {
+
+  /**
+   * a scheduled task, which can be cancelled until it runs
+   */
+  public static class Timeout {
+
+    private final Runnable task;
+    //nanoseconds after the wheel started at which the task is due
+    private final long deadline;
+    private final AtomicBoolean done = new AtomicBoolean(false);
+
+    //turns of the wheel left before the task is due, and the next timeout of its bucket
+    private long rounds;
+    private Timeout next;
+
+    private Timeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * keeps the task from running
+     *
+     * @return false if it already ran or was cancelled
+     */
+    public boolean cancel() {
+      return done.compareAndSet(false, true);
+    }
+  }
+
+  private final long tickNanos;
+  //heads of each bucket's list of timeouts, only touched by the wheel's thread
+  private final Timeout[] buckets;
+  private final int mask;
+  private final Ticker ticker;
+  private final long start;
+  //ticks run so far, only touched by the wheel's thread
+  private long tick = 0;
+
+  //timeouts scheduled since the last tick, handed to the wheel's thread
+  private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+
+  /**
+   * @param name    of the wheel's thread
+   * @param tick    how often the wheel moves on, which is how late a timeout may fire
+   * @param buckets how many buckets the wheel has, rounded up to a power of two
+   */
+  public TimerWheel(String name, long tick, TimeUnit unit, int buckets) {
+    this(tick, unit, buckets, Ticker.SYSTEM);
+
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        turn();
+      }
+    }, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * a wheel without a thread of its own, moved on by calling {@link #advance}
+   */
+  TimerWheel(long tick, TimeUnit unit, int buckets, Ticker ticker) {
+    this.tickNanos = Math.max(1, unit.toNanos(tick));
+
+    int size = Integer.highestOneBit(Math.max(1, buckets - 1)) << 1;
+    this.buckets = new Timeout[size];
+    this.mask = size - 1;
+    this.ticker = ticker;
+    this.start = ticker.read();
+  }
+
+  /**
+   * runs the task on the wheel's thread once the delay has passed
+   */
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    Timeout timeout = new Timeout(task, ticker.read() - start + Math.max(0, unit.toNanos(delay)));
+    scheduled.add(timeout);
+    return timeout;
+  }
+
+  private void turn() {
+    while (true) {
+      long wait;
+      while ((wait = (tick + 1) * tickNanos - (ticker.read() - start)) > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      advance();
+    }
+  }
+
+  /**
+   * runs every tick that is over by now
+   */
+  void advance() {
+    //the bucket of a tick is only run once the tick is over, so nothing in it fires early
+    while ((tick + 1) * tickNanos <= ticker.read() - start) {
+      Timeout timeout;
+      while ((timeout = scheduled.poll()) != null) {
+        if (timeout.done.get()) continue;
+
+        //one already overdue goes in the bucket about to run
+        long due = Math.max(timeout.deadline / tickNanos, tick);
+        timeout.rounds = (due - tick) / buckets.length;
+        int bucket = (int) (due & mask);
+        timeout.next = buckets[bucket];
+        buckets[bucket] = timeout;
+      }
+
+      expire((int) (tick & mask));
+      tick++;
+    }
+  }
+
+  //runs the timeouts of the bucket that are due, keeping those a turn or more away and dropping cancelled ones
+  private void expire(int bucket) {
+    Timeout kept = null;
+    Timeout timeout = buckets[bucket];
+    buckets[bucket] = null;
+
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      if (timeout.rounds > 0) {
+        timeout.rounds--;
+        timeout.next = kept;
+        kept = timeout;
+      } else if (timeout.done.compareAndSet(false, true)) {
+        timeout.next = null;
+        try {
+          timeout.task.run();
+        } catch (RuntimeException e) {
+          //one failing task must not stop the wheel
+          e.printStackTrace();
+        }
+      }
+      timeout = next;
+    }
+
+    //tasks that ran only ever add to the queue, so the bucket is still empty
+    buckets[bucket] = kept;
+  }
+}
@@ -0,0 +1,251 @@
+package socs.network.message;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Vector;
+
+import static org.junit.Assert.*;
+
+public class BinaryCodecTest {
+
+  private final BinaryCodec codec = new BinaryCodec();
+
+  @Test
+  public void roundTripsEveryPacketType() throws IOException {
+    for (short type = 0; type <= 6; type++) {
+      SOSPFPacket packet = packet(type);
+      assertSamePacket(packet, roundTrip(packet));
+    }
+  }
+
+  @Test
+  public void roundTripsHelloWeight() throws IOException {
+    SOSPFPacket packet = packet((short) 0);
+    packet.HelloWeight = 9;
+    assertEquals(9, roundTrip(packet).HelloWeight);
+  }
+
+  @Test
+  public void leavesOutEveryOptionalField() throws IOException {
+    SOSPFPacket packet = new SOSPFPacket();
+    packet.sospfType = 3;
+    packet.srcProcessPort = 6001;
+
+    SOSPFPacket decoded = roundTrip(packet);
+    assertEquals(3, decoded.sospfType);
+    assertEquals(6001, decoded.srcProcessPort);
+    assertNull(decoded.srcProcessIP);
+    assertNull(decoded.srcIP);
+    assertNull(decoded.dstIP);
+    assertNull(decoded.routerID);
+    assertNull(decoded.neighborID);
+    assertNull(decoded.lsaArray);
+    assertNull(decoded.lsaHeaders);
+    assertNull(decoded.payload);
+  }
+
+  @Test
+  public void roundTripsEachOptionalFieldOnItsOwn() throws IOException {
+    SOSPFPacket packet = bare();
+    packet.srcProcessIP = "127.0.0.1";
+    assertEquals("127.0.0.1", roundTrip(packet).srcProcessIP);
+
+    packet = bare();
+    packet.srcIP = "192.168.1.1";
+    assertEquals("192.168.1.1", roundTrip(packet).srcIP);
+
+    packet = bare();
+    packet.dstIP = "10.0.0.255";
+    assertEquals("10.0.0.255", roundTrip(packet).dstIP);
+
+    packet = bare();
+    packet.routerID = "";
+    assertEquals("", roundTrip(packet).routerID);
+
+    packet = bare();
+    packet.neighborID = "192.168.1.2";
+    assertEquals("192.168.1.2", roundTrip(packet).neighborID);
+
+    packet = bare();
+    packet.lsaArray = new Vector<LSA>();
+    assertEquals(0, roundTrip(packet).lsaArray.size());
+
+    packet = bare();
+    packet.lsaHeaders = new Vector<LSAHeader>();
+    assertEquals(0, roundTrip(packet).lsaHeaders.size());
+
+    packet = bare();
+    packet.payload = "";
+    assertEquals("", roundTrip(packet).payload);
+  }
+
+  @Test
+  public void roundTripsLSAs() throws IOException {
+    SOSPFPacket packet = packet((short) 1);
+    packet.lsaArray.add(lsa("192.168.1.2", Integer.MIN_VALUE));
+    LSA empty = new LSA();
+    empty.linkStateID = "192.168.1.3";
+    packet.lsaArray.add(empty);
+
+    SOSPFPacket decoded = roundTrip(packet);
+    assertEquals(3, decoded.lsaArray.size());
+    for (int i = 0; i < 3; i++) {
+      assertSameLSA(packet.lsaArray.get(i), decoded.lsaArray.get(i));
+    }
+  }
+
+  @Test
+  public void roundTripsDataPackets() throws IOException {
+    SOSPFPacket packet = packet((short) 6);
+    packet.ttl = 255;
+    packet.sentAt = Long.MAX_VALUE;
+    packet.payload = "hello over two hops, \u00e9\u4e2d";
+
+    SOSPFPacket decoded = roundTrip(packet);
+    assertEquals(packet.payload, decoded.payload);
+    assertEquals(255, decoded.ttl);
+    assertEquals(Long.MAX_VALUE, decoded.sentAt);
+  }
+
+  @Test
+  public void roundTripsStrings() throws IOException {
+    assertEquals("Ok.", codec.decode(codec.encode("Ok.")));
+    assertEquals("", codec.decode(codec.encode("")));
+  }
+
+  @Test
+  public void rejectsOtherVersions() throws IOException {
+    byte[] frame = codec.encode(packet((short) 0));
+    frame[1] = BinaryCodec.VERSION + 1;
+    try {
+      codec.decode(frame);
+      fail("decoded a frame of version " + frame[1]);
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("version"));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsFramesOfOtherCodecs() throws IOException {
+    byte[] frame = codec.encode("Ok.");
+    frame[0] = BinaryCodec.MAGIC + 1;
+    codec.decode(frame);
+  }
+
+  @Test(expected = EncodingException.class)
+  public void refusesPayloadsLongerThanAString() throws IOException {
+    SOSPFPacket packet = packet((short) 6);
+    char[] payload = new char[70000];
+    Arrays.fill(payload, 'x');
+    packet.payload = new String(payload);
+    codec.encode(packet);
+  }
+
+  @Test(expected = EncodingException.class)
+  public void refusesSimulatedIPsThatAreNotIPv4() throws IOException {
+    SOSPFPacket packet = bare();
+    packet.srcIP = "router-1";
+    codec.encode(packet);
+  }
+
+  private SOSPFPacket roundTrip(SOSPFPacket packet) throws IOException {
+    return (SOSPFPacket) codec.decode(codec.encode(packet));
+  }
+
+  //a packet with only the fields that are always written
+  private static SOSPFPacket bare() {
+    SOSPFPacket packet = new SOSPFPacket();
+    packet.sospfType = 0;
+    packet.srcProcessPort = 6001;
+    return packet;
+  }
+
+  //a packet of the type with every field it is sent with set
+  private static SOSPFPacket packet(short type) {
+    SOSPFPacket packet = new SOSPFPacket();
+    packet.srcProcessIP = "127.0.0.1";
+    packet.srcProcessPort = -1;
+    packet.srcIP = "192.168.1.1";
+    packet.dstIP = "192.168.1.3";
+    packet.sospfType = type;
+    packet.routerID = "192.168.1.1";
+    packet.neighborID = "192.168.1.1";
+    packet.HelloWeight = type == 0 || type == 2 ? 4 : 0;
+
+    if (type == 1) {
+      packet.lsaArray = new Vector<LSA>();
+      packet.lsaArray.add(lsa("192.168.1.1", 7));
+    } else if (type == 4 || type == 5) {
+      packet.lsaHeaders = new Vector<LSAHeader>();
+      packet.lsaHeaders.add(new LSAHeader(lsa("192.168.1.1", 7)));
+      packet.lsaHeaders.add(new LSAHeader(lsa("192.168.1.2", -3)));
+    } else if (type == 6) {
+      packet.payload = "anyone";
+      packet.ttl = 62;
+      packet.sentAt = 1476700000000L;
+    }
+    return packet;
+  }
+
+  private static LSA lsa(String linkStateID, int seq) {
+    LSA lsa = new LSA();
+    lsa.linkStateID = linkStateID;
+    lsa.lsaSeqNumber = seq;
+    lsa.originatedAt = 1476700000123L;
+    lsa.hopCount = 65535;
+
+    for (int i = 0; i < 3; i++) {
+      LinkDescription ld = new LinkDescription();
+      ld.linkID = "192.168.2." + i;
+      ld.portNum = 6000 + i;
+      ld.tosMetrics = i * 10;
+      lsa.links.add(ld);
+    }
+
+    lsa.prefixes.add("0.0.0.0/0");
+    lsa.prefixes.add("192.168.4.0/24");
+    lsa.prefixes.add("10.1.2.3/32");
+    return lsa;
+  }
+
+  private static void assertSamePacket(SOSPFPacket expected, SOSPFPacket actual) {
+    String type = "type " + expected.sospfType;
+    assertEquals(type, expected.sospfType, actual.sospfType);
+    assertEquals(type, expected.srcProcessIP, actual.srcProcessIP);
+    assertEquals(type, expected.srcProcessPort, actual.srcProcessPort);
+    assertEquals(type, expected.srcIP, actual.srcIP);
+    assertEquals(type, expected.dstIP, actual.dstIP);
+    assertEquals(type, expected.routerID, actual.routerID);
+    assertEquals(type, expected.neighborID, actual.neighborID);
+    assertEquals(type, expected.HelloWeight, actual.HelloWeight);
+    assertEquals(type, expected.payload, actual.payload);
+    assertEquals(type, expected.ttl, actual.ttl);
+    assertEquals(type, expected.sentAt, actual.sentAt);
+
+    if (expected.lsaArray == null) {
+      assertNull(type, actual.lsaArray);
+    } else {
+      assertEquals(type, expected.lsaArray.size(), actual.lsaArray.size());
+      for (int i = 0; i < expected.lsaArray.size(); i++) {
+        assertSameLSA(expected.lsaArray.get(i), actual.lsaArray.get(i));
+      }
+    }
+
+    if (expected.lsaHeaders == null) {
+      assertNull(type, actual.lsaHeaders);
+    } else {
+      assertEquals(type, expected.lsaHeaders.toString(), actual.lsaHeaders.toString());
+    }
+  }
+
+  private static void assertSameLSA(LSA expected, LSA actual) {
+    assertEquals(expected.linkStateID, actual.linkStateID);
+    assertEquals(expected.lsaSeqNumber, actual.lsaSeqNumber);
+    assertEquals(expected.originatedAt, actual.originatedAt);
+    assertEquals(expected.hopCount, actual.hopCount);
+    assertEquals(expected.links.toString(), actual.links.toString());
+    assertEquals(expected.prefixes, actual.prefixes);
+  }
+}
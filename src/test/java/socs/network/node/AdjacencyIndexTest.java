@@ -0,0 +1,146 @@
+package socs.network.node;
+
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AdjacencyIndexTest {
+
+    private static final int ROUTERS = 30;
+
+    @Test
+    public void leavesOutLinksThatCannotBeOnAPath() {
+        Map<String, LSA> store = new HashMap<String, LSA>();
+        store.put(ip(0), lsa(0, 1, 0, 0, 1, 3, 7, 2));
+        store.put(ip(1), lsa(1, 1, 0, 4, 0, 5));
+        AdjacencyIndex index = new AdjacencyIndex(store, 1);
+
+        int a = index.indexOf(ip(0));
+        int b = index.indexOf(ip(1));
+        assertEquals(2, index.size());
+        assertEquals(-1, index.indexOf(ip(7)));
+
+        //the self entry and the link to a router without an LSA are gone
+        assertEquals(1, index.offsets[a + 1] - index.offsets[a]);
+        assertEquals(b, index.targets[index.offsets[a]]);
+        assertEquals(3, index.weights[index.offsets[a]]);
+
+        //both links of b to a are kept, and show up among the in-links of a
+        assertEquals(2, index.sourceOffsets[a + 1] - index.sourceOffsets[a]);
+        assertEquals(b, index.sources[index.sourceOffsets[a]]);
+        assertEquals(b, index.sources[index.sourceOffsets[a] + 1]);
+    }
+
+    @Test
+    public void patchesLikeAFullRebuild() {
+        Random random = new Random(535);
+
+        for (int round = 0; round < 10; round++) {
+            Map<String, LSA> store = new HashMap<String, LSA>();
+            for (int v = 0; v < ROUTERS; v++) {
+                store.put(ip(v), randomLsa(random, v, 1));
+            }
+            AdjacencyIndex patched = new AdjacencyIndex(store, 1);
+
+            for (int step = 0; step < 200; step++) {
+                int u = random.nextInt(ROUTERS);
+                LSA replaced = change(random, store.get(ip(u)));
+                store.put(replaced.linkStateID, replaced);
+
+                patched = new AdjacencyIndex(patched, replaced, step + 2);
+                AdjacencyIndex rebuilt = new AdjacencyIndex(store, patched.ids, step + 2);
+                assertSameIndex("round " + round + " step " + step + " router " + u, rebuilt, patched);
+            }
+        }
+    }
+
+    private static void assertSameIndex(String message, AdjacencyIndex expected, AdjacencyIndex actual) {
+        assertEquals(message, expected.version, actual.version);
+        assertArrayEquals(message, expected.nodes, actual.nodes);
+
+        //the out-links of a router keep the order of its LSA either way
+        assertArrayEquals(message, expected.offsets, actual.offsets);
+        assertArrayEquals(message, expected.targets, actual.targets);
+        assertArrayEquals(message, expected.weights, actual.weights);
+
+        //the in-links of a patched row may come in another order
+        assertArrayEquals(message, expected.sourceOffsets, actual.sourceOffsets);
+        for (int v = 0; v < expected.size(); v++) {
+            assertArrayEquals(message + " in-links of " + expected.nodes[v].linkStateID,
+                    inLinks(expected, v), inLinks(actual, v));
+        }
+    }
+
+    //the in-links of v as sorted source and cost pairs
+    private static long[] inLinks(AdjacencyIndex index, int v) {
+        long[] links = new long[index.sourceOffsets[v + 1] - index.sourceOffsets[v]];
+        for (int k = index.sourceOffsets[v]; k < index.sourceOffsets[v + 1]; k++) {
+            links[k - index.sourceOffsets[v]] = ((long) index.sources[k] << 32) | index.sourceWeights[k];
+        }
+        Arrays.sort(links);
+        return links;
+    }
+
+    //a router with links to a few random others, now and then to itself or to a router without an LSA
+    private static LSA randomLsa(Random random, int v, int seq) {
+        LSA lsa = lsa(v, seq);
+        int links = random.nextInt(5);
+        for (int i = 0; i < links; i++) {
+            lsa.links.add(link(random.nextInt(ROUTERS + 3), random.nextInt(10)));
+        }
+        return lsa;
+    }
+
+    //a copy of the LSA with one link added, removed or costing something else
+    private static LSA change(Random random, LSA current) {
+        LSA lsa = lsa(0, current.lsaSeqNumber + 1);
+        lsa.linkStateID = current.linkStateID;
+        for (LinkDescription ld : current.links) {
+            lsa.links.add(link(ld.linkID, ld.tosMetrics));
+        }
+
+        int what = random.nextInt(3);
+        if (lsa.links.isEmpty() || what == 0) {
+            lsa.links.add(link(random.nextInt(ROUTERS + 3), random.nextInt(10)));
+        } else if (what == 1) {
+            lsa.links.remove(random.nextInt(lsa.links.size()));
+        } else {
+            lsa.links.get(random.nextInt(lsa.links.size())).tosMetrics = random.nextInt(10);
+        }
+        return lsa;
+    }
+
+    //an LSA of router v linking to each (router, cost) pair given
+    private static LSA lsa(int v, int seq, int... links) {
+        LSA lsa = new LSA();
+        lsa.linkStateID = ip(v);
+        lsa.lsaSeqNumber = seq;
+        for (int i = 0; i < links.length; i += 2) {
+            lsa.links.add(link(links[i], links[i + 1]));
+        }
+        return lsa;
+    }
+
+    private static LinkDescription link(int v, int cost) {
+        return link(ip(v), cost);
+    }
+
+    private static LinkDescription link(String linkID, int cost) {
+        LinkDescription ld = new LinkDescription();
+        ld.linkID = linkID;
+        ld.portNum = -1;
+        ld.tosMetrics = cost;
+        return ld;
+    }
+
+    private static String ip(int v) {
+        return "192.168.1." + v;
+    }
+}
@@ -0,0 +1,226 @@
+package socs.network.node;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class DatabaseJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadsNothingFromAnEmptyDirectory() throws IOException {
+        assertTrue(new DatabaseJournal(folder.getRoot(), 10).load().isEmpty());
+    }
+
+    @Test
+    public void replaysTheSnapshotAndThenTheLog() throws IOException {
+        DatabaseJournal journal = new DatabaseJournal(folder.getRoot(), 10);
+        journal.load();
+        journal.append(lsa("192.168.1.1", 1));
+        journal.compact(Arrays.asList(lsa("192.168.1.1", 1), lsa("192.168.1.2", 1)));
+        journal.append(lsa("192.168.1.2", 2));
+        journal.append(lsa("192.168.1.3", 1));
+
+        List<LSA> lsas = new DatabaseJournal(folder.getRoot(), 10).load();
+        assertEquals(4, lsas.size());
+        assertSameLSA(lsa("192.168.1.1", 1), lsas.get(0));
+        assertSameLSA(lsa("192.168.1.2", 1), lsas.get(1));
+        assertSameLSA(lsa("192.168.1.2", 2), lsas.get(2));
+        assertSameLSA(lsa("192.168.1.3", 1), lsas.get(3));
+    }
+
+    @Test
+    public void compactsOnceEnoughRecordsAreLogged() throws IOException {
+        DatabaseJournal journal = new DatabaseJournal(folder.getRoot(), 3);
+        journal.load();
+        assertFalse(journal.append(lsa("192.168.1.1", 1)));
+        assertFalse(journal.append(lsa("192.168.1.1", 2)));
+        assertTrue(journal.append(lsa("192.168.1.1", 3)));
+
+        journal.compact(Arrays.asList(lsa("192.168.1.1", 3)));
+        assertEquals(0, log().length());
+        assertFalse(new File(folder.getRoot(), DatabaseJournal.SNAPSHOT + ".tmp").exists());
+
+        //the count starts over with the empty log
+        assertFalse(journal.append(lsa("192.168.1.1", 4)));
+        assertFalse(journal.append(lsa("192.168.1.1", 5)));
+        assertTrue(journal.append(lsa("192.168.1.1", 6)));
+
+        List<LSA> lsas = new DatabaseJournal(folder.getRoot(), 3).load();
+        assertEquals(4, lsas.size());
+        assertEquals(3, lsas.get(0).lsaSeqNumber);
+        assertEquals(6, lsas.get(3).lsaSeqNumber);
+    }
+
+    @Test
+    public void carriesOnCountingTheRecordsOfALoadedLog() throws IOException {
+        DatabaseJournal journal = new DatabaseJournal(folder.getRoot(), 3);
+        journal.load();
+        journal.append(lsa("192.168.1.1", 1));
+        journal.append(lsa("192.168.1.1", 2));
+
+        journal = new DatabaseJournal(folder.getRoot(), 3);
+        journal.load();
+        assertTrue(journal.append(lsa("192.168.1.1", 3)));
+    }
+
+    @Test
+    public void restoresADatabaseThatWasCompacted() throws IOException {
+        RouterDescription rd = new RouterDescription("127.0.0.1", (short) 6000, "192.168.1.1");
+        LinkStateDatabase db = new LinkStateDatabase(rd);
+        assertEquals(0, db.restore(new DatabaseJournal(folder.getRoot(), 3)));
+
+        //the third install folds the log into a snapshot of the whole database
+        db.install(lsa("192.168.1.2", 1));
+        db.install(lsa("192.168.1.3", 1));
+        assertTrue(log().length() > 0);
+        db.install(lsa("192.168.1.2", 2));
+        assertEquals(0, log().length());
+        db.install(lsa("192.168.1.4", 1));
+
+        LinkStateDatabase restored = new LinkStateDatabase(rd);
+        restored.restore(new DatabaseJournal(folder.getRoot(), 3));
+        assertEquals(4, restored.lsas().size());
+        assertSameLSA(lsa("192.168.1.2", 2), restored.get("192.168.1.2"));
+        assertSameLSA(lsa("192.168.1.4", 1), restored.get("192.168.1.4"));
+    }
+
+    @Test
+    public void truncatesATornTail() throws IOException {
+        DatabaseJournal journal = new DatabaseJournal(folder.getRoot(), 10);
+        journal.load();
+        journal.append(lsa("192.168.1.1", 1));
+        journal.append(lsa("192.168.1.2", 1));
+        long good = log().length();
+        journal.append(lsa("192.168.1.3", 1));
+
+        //a crash in the middle of writing the last record
+        RandomAccessFile file = new RandomAccessFile(log(), "rw");
+        file.setLength(log().length() - 5);
+        file.close();
+
+        journal = new DatabaseJournal(folder.getRoot(), 10);
+        List<LSA> lsas = journal.load();
+        assertEquals(2, lsas.size());
+        assertEquals("192.168.1.2", lsas.get(1).linkStateID);
+        assertEquals(good, log().length());
+
+        //new records go right after the last good one
+        journal.append(lsa("192.168.1.4", 1));
+        lsas = new DatabaseJournal(folder.getRoot(), 10).load();
+        assertEquals(3, lsas.size());
+        assertSameLSA(lsa("192.168.1.4", 1), lsas.get(2));
+    }
+
+    @Test
+    public void truncatesATailThatFailsItsChecksum() throws IOException {
+        DatabaseJournal journal = new DatabaseJournal(folder.getRoot(), 10);
+        journal.load();
+        journal.append(lsa("192.168.1.1", 1));
+        long good = log().length();
+        journal.append(lsa("192.168.1.2", 1));
+        journal.append(lsa("192.168.1.3", 1));
+
+        //one flipped bit in the payload of the second record also ends the replay before the third
+        RandomAccessFile file = new RandomAccessFile(log(), "rw");
+        file.seek(good + 10);
+        int b = file.read();
+        file.seek(good + 10);
+        file.write(b ^ 1);
+        file.close();
+
+        List<LSA> lsas = new DatabaseJournal(folder.getRoot(), 10).load();
+        assertEquals(1, lsas.size());
+        assertEquals("192.168.1.1", lsas.get(0).linkStateID);
+        assertEquals(good, log().length());
+    }
+
+    @Test
+    public void readsRecordsWrittenBeforePrefixesWereAdvertised() throws IOException {
+        LSA old = lsa("192.168.1.1", 7);
+        old.prefixes.clear();
+
+        //a record that ends after the links
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        writeString(payload, old.linkStateID);
+        payload.writeInt(old.lsaSeqNumber);
+        payload.writeShort(old.links.size());
+        for (LinkDescription ld : old.links) {
+            writeString(payload, ld.linkID);
+            payload.writeInt(ld.portNum);
+            payload.writeInt(ld.tosMetrics);
+        }
+        payload.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        DataOutputStream record = new DataOutputStream(new FileOutputStream(log()));
+        record.writeInt(bytes.size());
+        record.writeInt((int) crc.getValue());
+        record.write(bytes.toByteArray());
+        record.close();
+
+        DatabaseJournal journal = new DatabaseJournal(folder.getRoot(), 10);
+        List<LSA> lsas = journal.load();
+        assertEquals(1, lsas.size());
+        assertSameLSA(old, lsas.get(0));
+
+        //and records with prefixes can follow them in the same log
+        journal.append(lsa("192.168.1.2", 1));
+        lsas = new DatabaseJournal(folder.getRoot(), 10).load();
+        assertEquals(2, lsas.size());
+        assertSameLSA(lsa("192.168.1.2", 1), lsas.get(1));
+    }
+
+    private File log() {
+        return new File(folder.getRoot(), DatabaseJournal.LOG);
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    private static LSA lsa(String linkStateID, int seq) {
+        LSA lsa = new LSA();
+        lsa.linkStateID = linkStateID;
+        lsa.lsaSeqNumber = seq;
+
+        for (int i = 0; i < 3; i++) {
+            LinkDescription ld = new LinkDescription();
+            ld.linkID = "192.168.2." + i;
+            ld.portNum = 6000 + i;
+            ld.tosMetrics = i * 10;
+            lsa.links.add(ld);
+        }
+
+        lsa.prefixes.add("192.168.4.0/24");
+        lsa.prefixes.add("10.1.2.3/32");
+        return lsa;
+    }
+
+    private static void assertSameLSA(LSA expected, LSA actual) {
+        assertEquals(expected.linkStateID, actual.linkStateID);
+        assertEquals(expected.lsaSeqNumber, actual.lsaSeqNumber);
+        assertEquals(expected.links.toString(), actual.links.toString());
+        assertEquals(expected.prefixes, actual.prefixes);
+    }
+}
@@ -0,0 +1,76 @@
+package socs.network.node;
+
+import socs.network.util.Ticker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers moved on by hand, for testing the schedulers without sleeping. Scheduling only records the task; advance
+ * moves the clock read by {@link #ticker} and runs every task that has come due, in order of due time, on the
+ * calling thread. No thread of the underlying pool is ever started.
+ */
+class ManualTimers extends ScheduledThreadPoolExecutor {
+
+    //runs every task right away on the caller's thread
+    static final Executor DIRECT = new Executor() {
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    final Ticker ticker = new Ticker() {
+        public long read() {
+            return now;
+        }
+    };
+
+    //delay in ms of every task scheduled so far
+    final List<Long> delays = new ArrayList<Long>();
+
+    //starts well away from 0, which the schedulers take for never
+    private long now = TimeUnit.SECONDS.toNanos(1);
+    private final List<Long> due = new ArrayList<Long>();
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    ManualTimers() {
+        super(1);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        delays.add(unit.toMillis(delay));
+        due.add(now + unit.toNanos(delay));
+        tasks.add(task);
+        return null;
+    }
+
+    /**
+     * moves the clock on by the given number of ms, running every task due by then at the time it was due
+     */
+    void advance(long ms) {
+        long until = now + TimeUnit.MILLISECONDS.toNanos(ms);
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (due.get(i) <= until && (next == -1 || due.get(i) < due.get(next))) next = i;
+            }
+            if (next == -1) break;
+
+            now = Math.max(now, due.remove(next));
+            tasks.remove(next).run();
+        }
+        now = until;
+    }
+
+    /**
+     * returns how many scheduled tasks have not run yet
+     */
+    int pending() {
+        return tasks.size();
+    }
+}
@@ -0,0 +1,76 @@
+package socs.network.node;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OriginationSchedulerTest {
+
+    private final ManualTimers timers = new ManualTimers();
+    private final AtomicInteger originated = new AtomicInteger();
+    private final OriginationScheduler scheduler = new OriginationScheduler(timers, ManualTimers.DIRECT,
+            new Runnable() {
+                public void run() {
+                    originated.incrementAndGet();
+                }
+            }, 100, timers.ticker);
+
+    @Test
+    public void originatesRightAwayAfterAQuietInterval() {
+        scheduler.request();
+        assertEquals(1, originated.get());
+        assertEquals(0, timers.pending());
+
+        timers.advance(100);
+        scheduler.request();
+        assertEquals(2, originated.get());
+        assertEquals(0, timers.pending());
+    }
+
+    @Test
+    public void waitsOutTheMinimumInterval() {
+        scheduler.request();
+        timers.advance(30);
+        scheduler.request();
+        assertEquals(1, originated.get());
+        assertEquals(Long.valueOf(70), timers.delays.get(0));
+
+        timers.advance(69);
+        assertEquals(1, originated.get());
+        timers.advance(1);
+        assertEquals(2, originated.get());
+    }
+
+    @Test
+    public void foldsABurstIntoOneOrigination() {
+        scheduler.request();
+        for (int i = 0; i < 10; i++) {
+            timers.advance(5);
+            scheduler.request();
+        }
+        assertEquals(1, timers.pending());
+        assertEquals(9, scheduler.merged.sum());
+
+        timers.advance(100);
+        assertEquals(2, originated.get());
+        assertEquals(11, scheduler.requests.sum());
+    }
+
+    @Test
+    public void countsTheIntervalFromTheDelayedOrigination() {
+        scheduler.request();
+        timers.advance(50);
+        scheduler.request();
+        timers.advance(50);
+        assertEquals(2, originated.get());
+
+        //the delayed origination just went out, so the next request waits a whole interval
+        scheduler.request();
+        assertEquals(2, originated.get());
+        assertEquals(Long.valueOf(100), timers.delays.get(1));
+        timers.advance(100);
+        assertEquals(3, originated.get());
+    }
+}
@@ -0,0 +1,165 @@
+package socs.network.node;
+
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RoutingTableTest {
+
+    private static final int UNREACHABLE = ShortestPathTree.UNREACHABLE;
+
+    @Test
+    public void listsEveryNextHopOfADiamond() {
+        Map<String, LSA> store = new HashMap<String, LSA>();
+        store.put(ip(0), lsa(0, 1, 1, 2, 1, 3, 2));
+        store.put(ip(1), lsa(1, 4, 1));
+        store.put(ip(2), lsa(2, 4, 1));
+        store.put(ip(3), lsa(3, 4, 1));
+        store.put(ip(4), lsa(4));
+        RoutingTable table = table(store);
+
+        assertEquals(2, table.getCost(ip(4)));
+        assertEquals(Arrays.asList(ip(1), ip(2)), table.getNextHops(ip(4)));
+        assertEquals(Arrays.asList(ip(3)), table.getNextHops(ip(3)));
+        assertEquals(2, table.getAllShortestPaths(ip(4)).split("\n").length);
+        assertTrue(table.getNextHops(ip(0)).isEmpty());
+    }
+
+    @Test
+    public void agreesWithABruteForceSearch() {
+        Random random = new Random(535);
+
+        for (int round = 0; round < 200; round++) {
+            int n = 2 + random.nextInt(25);
+            Map<String, LSA> store = new HashMap<String, LSA>();
+            for (int v = 0; v < n; v++) {
+                LSA lsa = lsa(v);
+                int links = random.nextInt(4);
+                for (int i = 0; i < links; i++) {
+                    //small costs, so there are plenty of equal-cost paths, and now and then two links to one router
+                    lsa.links.add(link(random.nextInt(n), 1 + random.nextInt(3)));
+                }
+                store.put(ip(v), lsa);
+            }
+
+            RoutingTable table = table(store);
+            ShortestPathTree tree = table.tree;
+            AdjacencyIndex index = tree.index;
+            int[][] cost = allPairs(index);
+            RoutingTable.NextHops hops = table.nextHops();
+
+            for (int v = 0; v < n; v++) {
+                String message = "round " + round + " destination " + index.nodes[v].linkStateID;
+                int d = cost[tree.root][v];
+                assertEquals(message, d, tree.distance[v]);
+                if (v == tree.root || d == UNREACHABLE) {
+                    assertEquals(message, 0, tree.predecessors(v).length);
+                    continue;
+                }
+
+                //u comes right before v on a shortest path if a link from u to v closes one
+                int[] predecessors = new int[n];
+                int count = 0;
+                for (int u = 0; u < n; u++) {
+                    if (cost[tree.root][u] != UNREACHABLE && cheapestLink(index, u, v) == d - cost[tree.root][u]) {
+                        predecessors[count++] = u;
+                    }
+                }
+                assertArrayEquals(message, Arrays.copyOf(predecessors, count), sorted(tree.predecessors(v)));
+                assertEquals(message, tree.predecessors(v)[0], tree.predecessor[v]);
+
+                //a neighbor starts a shortest path if the link to it plus its own distance to v add up
+                int[] nextHops = new int[n];
+                count = 0;
+                for (int u = 0; u < n; u++) {
+                    int link = cheapestLink(index, tree.root, u);
+                    if (link != UNREACHABLE && cost[u][v] != UNREACHABLE && link + cost[u][v] == d) {
+                        nextHops[count++] = u;
+                    }
+                }
+                assertArrayEquals(message, Arrays.copyOf(nextHops, count), sorted(hops.of(v)));
+                int first = index.indexOf(table.getNextHop(index.nodes[v].linkStateID));
+                assertTrue(message, Arrays.asList(box(hops.of(v))).contains(first));
+            }
+        }
+    }
+
+    private static RoutingTable table(Map<String, LSA> store) {
+        AdjacencyIndex index = new AdjacencyIndex(store, 1);
+        return new RoutingTable(new ShortestPathTree(index, index.indexOf(ip(0))));
+    }
+
+    //cost of the cheapest path between every pair of routers, by Floyd-Warshall
+    private static int[][] allPairs(AdjacencyIndex index) {
+        int n = index.size();
+        int[][] cost = new int[n][n];
+        for (int u = 0; u < n; u++) {
+            Arrays.fill(cost[u], UNREACHABLE);
+            cost[u][u] = 0;
+            for (int v = 0; v < n; v++) {
+                if (u != v) cost[u][v] = cheapestLink(index, u, v);
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            for (int u = 0; u < n; u++) {
+                for (int v = 0; v < n; v++) {
+                    if (cost[u][k] != UNREACHABLE && cost[k][v] != UNREACHABLE && cost[u][k] + cost[k][v] < cost[u][v]) {
+                        cost[u][v] = cost[u][k] + cost[k][v];
+                    }
+                }
+            }
+        }
+        return cost;
+    }
+
+    private static int cheapestLink(AdjacencyIndex index, int u, int v) {
+        int cheapest = UNREACHABLE;
+        for (int k = index.offsets[u]; k < index.offsets[u + 1]; k++) {
+            if (index.targets[k] == v) cheapest = Math.min(cheapest, index.weights[k]);
+        }
+        return cheapest;
+    }
+
+    private static int[] sorted(int[] ids) {
+        int[] copy = ids.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private static Integer[] box(int[] ids) {
+        Integer[] boxed = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            boxed[i] = ids[i];
+        }
+        return boxed;
+    }
+
+    //an LSA of router v linking to each (router, cost) pair given
+    private static LSA lsa(int v, int... links) {
+        LSA lsa = new LSA();
+        lsa.linkStateID = ip(v);
+        for (int i = 0; i < links.length; i += 2) {
+            lsa.links.add(link(links[i], links[i + 1]));
+        }
+        return lsa;
+    }
+
+    private static LinkDescription link(int v, int cost) {
+        LinkDescription ld = new LinkDescription();
+        ld.linkID = ip(v);
+        ld.portNum = -1;
+        ld.tosMetrics = cost;
+        return ld;
+    }
+
+    private static String ip(int v) {
+        return "192.168.1." + v;
+    }
+}
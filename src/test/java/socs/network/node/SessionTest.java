@@ -0,0 +1,92 @@
+package socs.network.node;
+
+import org.junit.After;
+import org.junit.Test;
+import socs.network.message.SOSPFPacket;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SessionTest {
+
+    //a session that only keeps what is sent over it
+    private static class RecordingSession extends Session {
+        final LinkedBlockingQueue<Object> sent = new LinkedBlockingQueue<Object>();
+
+        void send(Object message) {
+            sent.add(message);
+        }
+
+        void close() {
+        }
+
+        boolean isOpen() {
+            return true;
+        }
+    }
+
+    private final RecordingSession session = new RecordingSession();
+    private final ExecutorService caller = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        caller.shutdownNow();
+    }
+
+    private Future<Object> requestInBackground(final Object message, final int replyType) {
+        return caller.submit(new Callable<Object>() {
+            public Object call() throws IOException {
+                return session.request(message, replyType, 10000);
+            }
+        });
+    }
+
+    @Test
+    public void handsTheMatchingReplyToTheRequest() throws Exception {
+        Future<Object> reply = requestInBackground(packet(3), 3);
+        assertNotNull(session.sent.poll(5, TimeUnit.SECONDS));
+
+        //other packets are left to the handler
+        assertFalse(session.offerReply(packet(0)));
+        assertFalse(session.offerReply("Ok."));
+
+        SOSPFPacket answer = packet(3);
+        assertTrue(session.offerReply(answer));
+        assertSame(answer, reply.get(5, TimeUnit.SECONDS));
+
+        //nothing is waiting any more
+        assertFalse(session.offerReply(packet(3)));
+    }
+
+    @Test
+    public void refusesASecondRequestWhileOneIsPending() throws Exception {
+        Future<Object> reply = requestInBackground("192.168.1.2", Session.STRING_REPLY);
+        assertNotNull(session.sent.poll(5, TimeUnit.SECONDS));
+
+        try {
+            session.request(packet(3), 3, 10000);
+            fail("a second request was sent while the first one was waiting");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("already pending"));
+        }
+        assertTrue(session.sent.isEmpty());
+
+        //the first request still gets its reply, and the session takes requests again afterwards
+        assertTrue(session.offerReply("Ok."));
+        assertEquals("Ok.", reply.get(5, TimeUnit.SECONDS));
+        assertNull(session.request(packet(3), 3, 10));
+    }
+
+    private static SOSPFPacket packet(int type) {
+        SOSPFPacket packet = new SOSPFPacket();
+        packet.sospfType = (short) type;
+        return packet;
+    }
+}
@@ -0,0 +1,183 @@
+package socs.network.node;
+
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ShortestPathTreeTest {
+
+    private static final int ROUTERS = 40;
+
+    @Test
+    public void findsTheShortestPathsOfASmallGraph() {
+        LinkStateDatabase db = new LinkStateDatabase(new RouterDescription("127.0.0.1", (short) 6000, ip(0)));
+        db.install(lsa(0, 1, 1, 1, 2, 4));
+        db.install(lsa(1, 1, 2, 1, 3, 7));
+        db.install(lsa(2, 1, 3, 1));
+        db.install(lsa(3, 1));
+
+        RoutingTable table = db.snapshot().routingTable;
+        assertEquals(0, table.getCost(ip(0)));
+        assertEquals(1, table.getCost(ip(1)));
+        assertEquals(2, table.getCost(ip(2)));
+        assertEquals(3, table.getCost(ip(3)));
+        assertEquals(ip(2), table.getPredecessor(ip(3)));
+        assertEquals(ip(1), table.getNextHop(ip(3)));
+    }
+
+    @Test
+    public void repairsTheTreeOfASmallGraph() {
+        LinkStateDatabase db = new LinkStateDatabase(new RouterDescription("127.0.0.1", (short) 6000, ip(0)));
+        db.install(lsa(0, 1, 1, 1, 2, 5));
+        db.install(lsa(1, 1, 3, 1));
+        db.install(lsa(2, 1, 3, 1));
+        db.install(lsa(3, 1));
+        assertEquals(ip(1), db.snapshot().routingTable.getPredecessor(ip(3)));
+
+        //the link the tree used gets more expensive, so 3 moves under 2
+        long repairs = db.spfRepairs.sum();
+        db.install(lsa(1, 2, 3, 9));
+        assertEquals(repairs + 1, db.spfRepairs.sum());
+        assertEquals(6, db.snapshot().routingTable.getCost(ip(3)));
+        assertEquals(ip(2), db.snapshot().routingTable.getPredecessor(ip(3)));
+
+        //and drops out of the tree when nothing leads to it any more
+        db.install(lsa(1, 3));
+        db.install(lsa(2, 2));
+        assertEquals(-1, db.snapshot().routingTable.getCost(ip(3)));
+        assertNull(db.snapshot().routingTable.getNextHop(ip(3)));
+    }
+
+    @Test
+    public void repairsLikeAFullRun() {
+        Random random = new Random(535);
+
+        for (int round = 0; round < 10; round++) {
+            LinkStateDatabase db = new LinkStateDatabase(new RouterDescription("127.0.0.1", (short) 6000, ip(0)));
+            int[] seq = new int[ROUTERS];
+            for (int v = 0; v < ROUTERS; v++) {
+                db.install(randomLsa(random, v, ++seq[v]));
+            }
+
+            long repairs = db.spfRepairs.sum();
+            for (int step = 0; step < 300; step++) {
+                int u = random.nextInt(ROUTERS);
+                LSA current = db.snapshot().get(ip(u));
+                assertTrue(db.install(change(random, current, ++seq[u])));
+
+                assertSameTree("round " + round + " step " + step + " router " + u, fullRun(db), db.snapshot());
+            }
+            //most replacements are small enough to be repaired
+            assertTrue(db.spfRepairs.sum() - repairs > 150);
+        }
+    }
+
+    //the tree a full SPF run computes over what the database holds
+    private static ShortestPathTree fullRun(LinkStateDatabase db) {
+        DatabaseSnapshot snapshot = db.snapshot();
+        AdjacencyIndex index = new AdjacencyIndex(new HashMap<String, LSA>(db._store), snapshot.index.ids,
+                snapshot.version);
+        return new ShortestPathTree(index, index.indexOf(ip(0)));
+    }
+
+    private static void assertSameTree(String message, ShortestPathTree expected, DatabaseSnapshot snapshot) {
+        ShortestPathTree actual = snapshot.routingTable.tree;
+        assertEquals(message, expected.index.size(), actual.index.size());
+        assertArrayEquals(message, expected.distance, actual.distance);
+
+        RoutingTable.NextHops expectedHops = new RoutingTable(expected).nextHops();
+        RoutingTable.NextHops actualHops = snapshot.routingTable.nextHops();
+
+        for (int v = 0; v < expected.index.size(); v++) {
+            String router = message + " destination " + expected.index.nodes[v].linkStateID;
+
+            //ties may be broken either way, but the tree edge has to be one of the shortest paths
+            assertEquals(router, expected.predecessor[v] == -1, actual.predecessor[v] == -1);
+            if (actual.predecessor[v] != -1) {
+                assertEquals(router, actual.distance[v],
+                        actual.distance[actual.predecessor[v]] + cheapestLink(actual.index, actual.predecessor[v], v));
+            }
+
+            assertArrayEquals(router, sorted(expected.predecessors(v)), sorted(actual.predecessors(v)));
+            assertArrayEquals(router, sorted(expectedHops.of(v)), sorted(actualHops.of(v)));
+        }
+    }
+
+    private static int cheapestLink(AdjacencyIndex index, int u, int v) {
+        int cheapest = Integer.MAX_VALUE;
+        for (int k = index.offsets[u]; k < index.offsets[u + 1]; k++) {
+            if (index.targets[k] == v) cheapest = Math.min(cheapest, index.weights[k]);
+        }
+        return cheapest;
+    }
+
+    private static int[] sorted(int[] ids) {
+        int[] copy = ids.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    //a router with links to a few random others
+    private static LSA randomLsa(Random random, int v, int seq) {
+        LSA lsa = lsa(v, seq);
+        int links = 1 + random.nextInt(4);
+        for (int i = 0; i < links; i++) {
+            lsa.links.add(link(random.nextInt(ROUTERS), 1 + random.nextInt(9)));
+        }
+        return lsa;
+    }
+
+    //a copy of the LSA with one link more or less expensive, removed or added
+    private static LSA change(Random random, LSA current, int seq) {
+        LSA lsa = new LSA();
+        lsa.linkStateID = current.linkStateID;
+        lsa.lsaSeqNumber = seq;
+        for (LinkDescription ld : current.links) {
+            lsa.links.add(link(ld.linkID, ld.tosMetrics));
+        }
+
+        int what = random.nextInt(4);
+        if (lsa.links.isEmpty() || what == 0) {
+            lsa.links.add(link(random.nextInt(ROUTERS), 1 + random.nextInt(9)));
+        } else if (what == 1) {
+            lsa.links.remove(random.nextInt(lsa.links.size()));
+        } else {
+            LinkDescription ld = lsa.links.get(random.nextInt(lsa.links.size()));
+            ld.tosMetrics = what == 2 ? Math.max(1, ld.tosMetrics - 1 - random.nextInt(5)) : ld.tosMetrics + 1 + random.nextInt(5);
+        }
+        return lsa;
+    }
+
+    //an LSA of router v linking to each (router, cost) pair given
+    private static LSA lsa(int v, int seq, int... links) {
+        LSA lsa = new LSA();
+        lsa.linkStateID = ip(v);
+        lsa.lsaSeqNumber = seq;
+        for (int i = 0; i < links.length; i += 2) {
+            lsa.links.add(link(links[i], links[i + 1]));
+        }
+        return lsa;
+    }
+
+    private static LinkDescription link(int v, int cost) {
+        return link(ip(v), cost);
+    }
+
+    private static LinkDescription link(String linkID, int cost) {
+        LinkDescription ld = new LinkDescription();
+        ld.linkID = linkID;
+        ld.portNum = -1;
+        ld.tosMetrics = cost;
+        return ld;
+    }
+
+    private static String ip(int v) {
+        return "192.168.1." + v;
+    }
+}
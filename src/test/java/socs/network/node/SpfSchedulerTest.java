@@ -0,0 +1,110 @@
+package socs.network.node;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SpfSchedulerTest {
+
+    private final ManualTimers timers = new ManualTimers();
+    private final AtomicInteger runs = new AtomicInteger();
+    private final SpfScheduler scheduler = new SpfScheduler(timers, ManualTimers.DIRECT, new Runnable() {
+        public void run() {
+            runs.incrementAndGet();
+        }
+    }, 10, 100, 400, timers.ticker);
+
+    @Test
+    public void runsTheFirstChangeAfterTheInitialDelay() {
+        scheduler.trigger();
+        assertEquals(Long.valueOf(10), timers.delays.get(0));
+
+        timers.advance(9);
+        assertEquals(0, runs.get());
+        timers.advance(1);
+        assertEquals(1, runs.get());
+        assertEquals(100, scheduler.currentHoldMs());
+    }
+
+    @Test
+    public void foldsChangesIntoTheScheduledRun() {
+        scheduler.trigger();
+        timers.advance(5);
+        scheduler.trigger();
+        scheduler.trigger();
+        assertEquals(1, timers.pending());
+
+        timers.advance(5);
+        assertEquals(1, runs.get());
+        assertEquals(3, scheduler.triggers.sum());
+        assertEquals(2, scheduler.coalesced.sum());
+
+        //a change after the run started needs a run of its own
+        scheduler.trigger();
+        assertEquals(1, timers.pending());
+        timers.advance(100);
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void doublesTheHoldTimeUpToTheMaxWait() {
+        scheduler.trigger();
+        timers.advance(10);
+
+        //a change 20 ms after the run waits out the rest of the 100 ms hold time
+        timers.advance(20);
+        scheduler.trigger();
+        assertEquals(Long.valueOf(80), timers.delays.get(1));
+        assertEquals(200, scheduler.currentHoldMs());
+        timers.advance(80);
+        assertEquals(2, runs.get());
+
+        //every change right after a run waits for the whole hold time, which keeps doubling
+        scheduler.trigger();
+        assertEquals(Long.valueOf(200), timers.delays.get(2));
+        assertEquals(400, scheduler.currentHoldMs());
+        timers.advance(200);
+
+        scheduler.trigger();
+        assertEquals(Long.valueOf(400), timers.delays.get(3));
+        assertEquals(400, scheduler.currentHoldMs());
+        timers.advance(400);
+
+        scheduler.trigger();
+        assertEquals(Long.valueOf(400), timers.delays.get(4));
+        assertEquals(400, scheduler.currentHoldMs());
+        timers.advance(400);
+        assertEquals(5, runs.get());
+    }
+
+    @Test
+    public void dropsBackToTheHoldTimeAfterAQuietHold() {
+        scheduler.trigger();
+        timers.advance(10);
+        scheduler.trigger();
+        timers.advance(100);
+        scheduler.trigger();
+        timers.advance(200);
+        assertEquals(400, scheduler.currentHoldMs());
+
+        //less than the hold time in force is still churn, and never waits less than the initial delay
+        timers.advance(300);
+        scheduler.trigger();
+        assertEquals(Long.valueOf(100), timers.delays.get(3));
+        timers.advance(100);
+        timers.advance(395);
+        scheduler.trigger();
+        assertEquals(Long.valueOf(10), timers.delays.get(4));
+        timers.advance(10);
+
+        //a whole hold time without a change starts over with the initial delay
+        timers.advance(400);
+        scheduler.trigger();
+        assertEquals(Long.valueOf(10), timers.delays.get(5));
+        assertEquals(100, scheduler.currentHoldMs());
+        timers.advance(10);
+        assertEquals(6, runs.get());
+    }
+}
@@ -0,0 +1,171 @@
+package socs.network.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PrefixTrieTest {
+
+  private static int address(String dotted) {
+    return IPv4.parse(dotted);
+  }
+
+  @Test
+  public void findsNothingInAnEmptyTrie() {
+    PrefixTrie trie = new PrefixTrie();
+    assertEquals(-1, trie.lookup(address("10.0.0.1")));
+    trie.freeze();
+    assertEquals(-1, trie.lookup(address("10.0.0.1")));
+    assertEquals(0, trie.size());
+  }
+
+  @Test
+  public void defaultRouteMatchesEverything() {
+    PrefixTrie trie = new PrefixTrie();
+    trie.put(address("1.2.3.4"), 0, 7);
+    trie.freeze();
+
+    assertEquals(7, trie.lookup(0));
+    assertEquals(7, trie.lookup(-1));
+    assertEquals(7, trie.lookup(address("192.168.4.7")));
+    assertEquals(7, trie.get(0, 0));
+  }
+
+  @Test
+  public void matchesPrefixesAroundTheIndexedBits() {
+    PrefixTrie trie = new PrefixTrie();
+    trie.put(address("10.1.0.0"), 16, 16);
+    trie.put(address("10.1.128.0"), 17, 17);
+    trie.put(address("10.1.128.5"), 32, 32);
+    trie.freeze();
+
+    assertEquals(16, trie.lookup(address("10.1.0.1")));
+    assertEquals(16, trie.lookup(address("10.1.127.255")));
+    assertEquals(17, trie.lookup(address("10.1.128.0")));
+    assertEquals(17, trie.lookup(address("10.1.255.255")));
+    assertEquals(32, trie.lookup(address("10.1.128.5")));
+    assertEquals(17, trie.lookup(address("10.1.128.4")));
+    assertEquals(-1, trie.lookup(address("10.2.0.0")));
+    assertEquals(-1, trie.lookup(address("10.0.255.255")));
+  }
+
+  @Test
+  public void prefersTheLongestOfOverlappingPrefixes() {
+    PrefixTrie trie = new PrefixTrie();
+    trie.put(address("192.168.0.0"), 16, 1);
+    trie.put(address("192.168.4.0"), 24, 2);
+    trie.put(address("192.168.4.0"), 22, 3);
+    trie.put(address("192.168.4.128"), 25, 4);
+    trie.put(0, 0, 5);
+    trie.freeze();
+
+    assertEquals(2, trie.lookup(address("192.168.4.1")));
+    assertEquals(4, trie.lookup(address("192.168.4.200")));
+    assertEquals(3, trie.lookup(address("192.168.5.1")));
+    assertEquals(1, trie.lookup(address("192.168.8.1")));
+    assertEquals(5, trie.lookup(address("172.16.0.1")));
+    assertEquals(5, trie.size());
+  }
+
+  @Test
+  public void ignoresBitsPastThePrefixLength() {
+    PrefixTrie trie = new PrefixTrie();
+    trie.put(address("192.168.4.99"), 24, 9);
+    trie.freeze();
+
+    assertEquals(9, trie.get(address("192.168.4.0"), 24));
+    assertEquals(9, trie.lookup(address("192.168.4.255")));
+    assertEquals(-1, trie.get(address("192.168.4.0"), 23));
+  }
+
+  @Test
+  public void replacesTheValueOfAPrefix() {
+    PrefixTrie trie = new PrefixTrie();
+    trie.put(address("10.0.0.0"), 8, 1);
+    trie.freeze();
+    assertEquals(1, trie.lookup(address("10.9.9.9")));
+
+    trie.put(address("10.0.0.0"), 8, 2);
+    assertEquals(1, trie.size());
+    assertEquals(2, trie.lookup(address("10.9.9.9")));
+    trie.freeze();
+    assertEquals(2, trie.lookup(address("10.9.9.9")));
+  }
+
+  @Test
+  public void seesInsertionsMadeAfterAFreeze() {
+    PrefixTrie trie = new PrefixTrie(1);
+    trie.put(address("10.0.0.0"), 8, 1);
+    trie.freeze();
+    assertEquals(1, trie.lookup(address("10.1.2.3")));
+
+    //enough to grow the node array past what the frozen layout holds
+    for (int i = 0; i < 100; i++) {
+      trie.put(address("10.1.0.0") + (i << 8), 24, 100 + i);
+    }
+    assertEquals(101, trie.lookup(address("10.1.1.3")));
+    assertEquals(1, trie.lookup(address("10.200.0.1")));
+
+    trie.freeze();
+    assertEquals(101, trie.lookup(address("10.1.1.3")));
+    assertEquals(199, trie.lookup(address("10.1.99.0")));
+    assertEquals(1, trie.lookup(address("10.200.0.1")));
+    assertEquals(101, trie.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesPrefixesLongerThanAnAddress() {
+    new PrefixTrie().put(0, 33, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesValuesOutOfRange() {
+    new PrefixTrie().put(0, 8, PrefixTrie.MAX_VALUE + 1);
+  }
+
+  @Test
+  public void agreesWithABruteForceScan() {
+    Random random = new Random(535);
+
+    for (int round = 0; round < 20; round++) {
+      int count = 1 + random.nextInt(2000);
+      int[] prefixes = new int[count];
+      int[] lengths = new int[count];
+      PrefixTrie trie = new PrefixTrie(16);
+
+      for (int i = 0; i < count; i++) {
+        //most prefixes share their top bits, so they overlap and branch below the index
+        lengths[i] = random.nextInt(33);
+        int address = random.nextBoolean() ? random.nextInt() : 0x0a000000 | random.nextInt(1 << 20);
+        prefixes[i] = address & PrefixTrie.mask(lengths[i]);
+        trie.put(address, lengths[i], i);
+      }
+
+      //checks the walk from the root first, then the frozen layout
+      for (int pass = 0; pass < 2; pass++) {
+        for (int probe = 0; probe < 2000; probe++) {
+          int address = probe % 2 == 0 ? random.nextInt()
+                  : prefixes[random.nextInt(count)] ^ random.nextInt(1 << random.nextInt(31));
+          assertEquals("round " + round + " address " + IPv4.format(address),
+                  bruteForce(prefixes, lengths, address), trie.lookup(address));
+        }
+        trie.freeze();
+      }
+    }
+  }
+
+  //value of the longest prefix the address falls in, the one put last if the same prefix was put more than once
+  private static int bruteForce(int[] prefixes, int[] lengths, int address) {
+    int best = -1;
+    int bestLength = -1;
+    for (int i = 0; i < prefixes.length; i++) {
+      if ((address & PrefixTrie.mask(lengths[i])) == prefixes[i] && lengths[i] >= bestLength) {
+        best = i;
+        bestLength = lengths[i];
+      }
+    }
+    return best;
+  }
+}
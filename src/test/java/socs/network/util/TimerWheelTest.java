@@ -0,0 +1,120 @@
+package socs.network.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+
+  private long now = TimeUnit.SECONDS.toNanos(1);
+  private final Ticker ticker = new Ticker() {
+    public long read() {
+      return now;
+    }
+  };
+
+  //a wheel of 8 buckets of 1 ms, which turns once every 8 ms
+  private final TimerWheel wheel = new TimerWheel(1, TimeUnit.MILLISECONDS, 8, ticker);
+  private final List<String> fired = new ArrayList<String>();
+
+  private TimerWheel.Timeout schedule(final String name, long delayMs) {
+    return wheel.schedule(new Runnable() {
+      public void run() {
+        fired.add(name);
+      }
+    }, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  //moves the clock on and lets the wheel run the ticks that are over
+  private void advance(long ms) {
+    now += TimeUnit.MILLISECONDS.toNanos(ms);
+    wheel.advance();
+  }
+
+  @Test
+  public void firesWithinATickOfTheDeadlineButNeverBefore() {
+    schedule("a", 3);
+    advance(3);
+    assertTrue(fired.isEmpty());
+    advance(1);
+    assertEquals(1, fired.size());
+  }
+
+  @Test
+  public void waitsOutTheTurnsATimeoutNeeds() {
+    //20 ms is two turns and a half, in the same bucket as a timeout of 4 ms
+    schedule("far", 20);
+    schedule("near", 4);
+
+    advance(5);
+    assertEquals(1, fired.size());
+    assertEquals("near", fired.get(0));
+
+    //the bucket comes round again at 12 and 20 ms, only the last one runs it
+    advance(15);
+    assertEquals(1, fired.size());
+    advance(1);
+    assertEquals(2, fired.size());
+    assertEquals("far", fired.get(1));
+  }
+
+  @Test
+  public void runsTimeoutsScheduledAtDifferentTimesInOrder() {
+    schedule("first", 10);
+    advance(6);
+    schedule("second", 10);
+    advance(5);
+    assertEquals(1, fired.size());
+    assertEquals("first", fired.get(0));
+    advance(5);
+    assertEquals(1, fired.size());
+    advance(1);
+    assertEquals(2, fired.size());
+  }
+
+  @Test
+  public void catchesUpWhenItFallsBehind() {
+    advance(100);
+    schedule("late", 10);
+    schedule("later", 30);
+
+    //the wheel's thread did not get to run for 50 ms
+    advance(50);
+    assertEquals(2, fired.size());
+    assertEquals("late", fired.get(0));
+  }
+
+  @Test
+  public void neverRunsACancelledTimeout() {
+    TimerWheel.Timeout timeout = schedule("a", 20);
+    advance(5);
+    assertTrue(timeout.cancel());
+    assertFalse(timeout.cancel());
+    advance(50);
+    assertTrue(fired.isEmpty());
+  }
+
+  @Test
+  public void cannotCancelATimeoutThatRan() {
+    TimerWheel.Timeout timeout = schedule("a", 0);
+    advance(1);
+    assertEquals(1, fired.size());
+    assertFalse(timeout.cancel());
+  }
+
+  @Test
+  public void keepsTurningPastAFailingTask() {
+    wheel.schedule(new Runnable() {
+      public void run() {
+        throw new IllegalStateException("expected by the test");
+      }
+    }, 1, TimeUnit.MILLISECONDS);
+    schedule("after", 2);
+    advance(3);
+    assertEquals(1, fired.size());
+  }
+}